@@ -0,0 +1,202 @@
+package batch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import main.ChargeError;
+
+/**
+ * BatchSummary maintains the totals for a single batch run: the number of
+ * case rows read, how many of them failed and why, how long the run took, how
+ * much each worker thread did and the first few error messages for reporting
+ * back to billing staff. A summary is only updated by the thread running the
+ * batch.
+ *
+ * @author Kimberle McGill
+ * @version 1.2.261018
+ */
+public class BatchSummary {
+
+	/* Number of case rows read (header and blank lines not included) */
+	private long rows;
+	/* Number of case rows that could not be calculated */
+	private long errors;
+	/* Elapsed time of the run in nanoseconds */
+	private long elapsedNanos;
+	/* Number of errors of each kind, by ordinal */
+	private final long[] errorCounts = new long[ChargeError.values().length];
+	/* First error messages, in input order */
+	private final List<String> errorMessages = new ArrayList<String>();
+	/* Rows and busy time of each worker thread, by name */
+	private final Map<String, long[]> workers = new TreeMap<String, long[]>();
+	/* Index of the rows of a worker */
+	private final static int WORKER_ROWS = 0;
+	/* Index of the busy time of a worker */
+	private final static int WORKER_NANOS = 1;
+	/* Maximum number of error messages kept */
+	private final static int MAX_MESSAGES = 100;
+	/* Nanoseconds in a second */
+	private final static double NANOS_PER_SEC = 1000000000.0;
+
+	/**
+	 * Records rows that were calculated.
+	 *
+	 * @param count
+	 *            the number of rows
+	 */
+	void addRows(long count) {
+		this.rows += count;
+	}
+
+	/**
+	 * Records the work done by one worker thread on one chunk of rows.
+	 *
+	 * @param worker
+	 *            name of the worker thread
+	 * @param count
+	 *            the number of rows calculated
+	 * @param nanos
+	 *            time taken in nanoseconds
+	 */
+	void addWorker(String worker, long count, long nanos) {
+		long[] totals = this.workers.get(worker);
+		if (totals == null) {
+			totals = new long[2];
+			this.workers.put(worker, totals);
+		}
+		totals[WORKER_ROWS] += count;
+		totals[WORKER_NANOS] += nanos;
+	}
+
+	/**
+	 * Records a row that could not be calculated.
+	 *
+	 * @param lineNumber
+	 *            the line of the input file the row was read from
+	 * @param error
+	 *            why the row could not be calculated
+	 */
+	void addError(long lineNumber, ChargeError error) {
+		this.rows++;
+		this.errors++;
+		this.errorCounts[error.ordinal()]++;
+		if (this.errorMessages.size() < MAX_MESSAGES) {
+			this.errorMessages.add("line " + lineNumber + ": " + error.getMessage());
+		}
+	}
+
+	/**
+	 * Sets the elapsed time of the run.
+	 *
+	 * @param elapsedNanos
+	 *            elapsed time in nanoseconds
+	 */
+	void setElapsedNanos(long elapsedNanos) {
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/**
+	 * Gets the number of case rows read.
+	 *
+	 * @return the number of rows
+	 */
+	public long getRows() {
+		return this.rows;
+	}
+
+	/**
+	 * Gets the number of case rows that could not be calculated.
+	 *
+	 * @return the number of errors
+	 */
+	public long getErrors() {
+		return this.errors;
+	}
+
+	/**
+	 * Gets the number of case rows that failed for the given reason.
+	 *
+	 * @param error
+	 *            the reason
+	 * @return the number of errors of that kind
+	 */
+	public long getErrors(ChargeError error) {
+		return this.errorCounts[error.ordinal()];
+	}
+
+	/**
+	 * Gets the number of case rows that failed for each reason that occurred.
+	 *
+	 * @return the number of errors, by kind
+	 */
+	public Map<ChargeError, Long> getErrorCounts() {
+		Map<ChargeError, Long> counts = new EnumMap<ChargeError, Long>(ChargeError.class);
+		for (ChargeError error : ChargeError.values()) {
+			if (this.errorCounts[error.ordinal()] > 0) {
+				counts.put(error, this.errorCounts[error.ordinal()]);
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Gets the elapsed time of the run.
+	 *
+	 * @return elapsed time in nanoseconds
+	 */
+	public long getElapsedNanos() {
+		return this.elapsedNanos;
+	}
+
+	/**
+	 * Gets the number of rows calculated per second.
+	 *
+	 * @return rows per second, or 0 if nothing was timed
+	 */
+	public double getRowsPerSecond() {
+		if (this.elapsedNanos <= 0) {
+			return 0;
+		}
+		return this.rows * NANOS_PER_SEC / this.elapsedNanos;
+	}
+
+	/**
+	 * Gets the first error messages (at most 100), in input order.
+	 *
+	 * @return the error messages
+	 */
+	public List<String> getErrorMessages() {
+		return Collections.unmodifiableList(this.errorMessages);
+	}
+
+	/**
+	 * Gets one line for each worker thread with the number of rows it
+	 * calculated and its rows per second while busy.
+	 *
+	 * @return the worker totals, by worker name
+	 */
+	public List<String> getWorkerSummaries() {
+		List<String> summaries = new ArrayList<String>();
+		for (Map.Entry<String, long[]> worker : this.workers.entrySet()) {
+			long[] totals = worker.getValue();
+			double rate = totals[WORKER_NANOS] > 0 ? totals[WORKER_ROWS] * NANOS_PER_SEC / totals[WORKER_NANOS] : 0;
+			summaries.add(String.format("%s: %d rows (%.0f rows/sec)", worker.getKey(), totals[WORKER_ROWS], rate));
+		}
+		return summaries;
+	}
+
+	/**
+	 * Returns the totals as a single line of text.
+	 *
+	 * @return the totals of the run
+	 */
+	@Override
+	public String toString() {
+		return String.format("%d rows, %d errors in %.3f s (%.0f rows/sec)", this.rows, this.errors,
+				this.elapsedNanos / NANOS_PER_SEC, getRowsPerSecond());
+	}
+}
@@ -0,0 +1,218 @@
+package batch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import main.ChargeError;
+import main.ChargeMetrics;
+import main.ChargeResult;
+import store.CaseStore;
+
+/**
+ * CaseChunk is a run of consecutive case rows from a batch input file that is
+ * calculated as one unit of work. Each chunk writes its result rows into its
+ * own buffer and keeps its own counts, so chunks can be calculated on
+ * different threads and then written out in input order. Rows are read and
+ * calculated by a CaseRow, which checks every row with ChargeValidator before
+ * it is calculated, so a bad row costs a table lookup and no exception. Cases
+ * are looked up in the shared ChargeCache. A chunk may also collect its
+ * calculated cases in its own CaseStore, to be added to the store of the run
+ * in input order.
+ *
+ * @author Kimberle McGill
+ * @version 1.2.261018
+ */
+class CaseChunk implements Callable<CaseChunk> {
+
+	/* Case rows of the chunk */
+	private final String[] lines;
+	/* Input line number of each row */
+	private final long[] lineNumbers;
+	/* Number of rows in the chunk */
+	private int size;
+	/* Separator of the fields */
+	private final char separator;
+	/* Year of the stop dates */
+	private final int year;
+	/* Calculated cases, null if they are not collected */
+	private final CaseStore store;
+	/* Result rows, filled in by call */
+	private StringBuilder results;
+	/* Line numbers of the rows that could not be calculated */
+	private final List<Long> errorLines = new ArrayList<Long>();
+	/* Why each of those rows could not be calculated */
+	private final List<ChargeError> errorKinds = new ArrayList<ChargeError>();
+	/* Name of the thread that calculated the chunk */
+	private String worker;
+	/* Time taken to calculate the chunk in nanoseconds */
+	private long elapsedNanos;
+	/* Number of separators in a result row */
+	private final static int RESULT_SEPARATORS = 4;
+	/* Expected characters in a result row */
+	private final static int ROW_CHARS = 32;
+
+	/**
+	 * Constructs a new, empty CaseChunk.
+	 *
+	 * @param capacity
+	 *            the most rows the chunk holds
+	 * @param separator
+	 *            the separator of the fields
+	 * @param year
+	 *            the year of the stop dates
+	 */
+	CaseChunk(int capacity, char separator, int year) {
+		this(capacity, separator, year, false);
+	}
+
+	/**
+	 * Constructs a new, empty CaseChunk that may collect its calculated cases.
+	 *
+	 * @param capacity
+	 *            the most rows the chunk holds
+	 * @param separator
+	 *            the separator of the fields
+	 * @param year
+	 *            the year of the stop dates
+	 * @param collect
+	 *            whether to keep the calculated cases in a CaseStore
+	 */
+	CaseChunk(int capacity, char separator, int year, boolean collect) {
+		this.lines = new String[capacity];
+		this.lineNumbers = new long[capacity];
+		this.separator = separator;
+		this.year = year;
+		this.store = collect ? new CaseStore(capacity) : null;
+	}
+
+	/**
+	 * Adds a case row to the chunk.
+	 *
+	 * @param line
+	 *            the case row
+	 * @param lineNumber
+	 *            the input line number of the row
+	 */
+	void add(String line, long lineNumber) {
+		this.lines[this.size] = line;
+		this.lineNumbers[this.size] = lineNumber;
+		this.size++;
+	}
+
+	/**
+	 * Is the chunk full?
+	 *
+	 * @return true if no more rows fit
+	 */
+	boolean isFull() {
+		return this.size == this.lines.length;
+	}
+
+	/**
+	 * Is the chunk empty?
+	 *
+	 * @return true if the chunk has no rows
+	 */
+	boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Calculates every row of the chunk into its result buffer.
+	 *
+	 * @return this chunk
+	 */
+	@Override
+	public CaseChunk call() {
+		long begin = System.nanoTime();
+		this.results = new StringBuilder(this.size * ROW_CHARS);
+		CaseRow row = new CaseRow(this.separator, this.year);
+
+		for (int i = 0; i < this.size; i++) {
+			String line = this.lines[i];
+			this.lines[i] = null;
+			ChargeError error = row.read(line);
+			if (error != null) {
+				ChargeMetrics.shared().countError(error);
+			} else if (this.store != null) {
+				try {
+					row.addTo(this.store);
+				} catch (IllegalArgumentException e) {
+					// only a case outside the years of the store gets here,
+					// already counted as a case in the metrics, so not as an error
+					error = ChargeError.SPAN;
+				}
+			}
+			if (error != null) {
+				addError(i, row.getCaseId(), error);
+				continue;
+			}
+			appendResult(row.getCaseId(), row.getTotalMinutes());
+		}
+
+		this.worker = Thread.currentThread().getName();
+		this.elapsedNanos = System.nanoTime() - begin;
+		return this;
+	}
+
+	/**
+	 * Gets the result rows.
+	 *
+	 * @return the result rows, one line per case
+	 */
+	CharSequence getResults() {
+		return this.results;
+	}
+
+	/**
+	 * Gets the calculated cases.
+	 *
+	 * @return the cases calculated, in input order, or null if they are not
+	 *         collected
+	 */
+	CaseStore getStore() {
+		return this.store;
+	}
+
+	/**
+	 * Adds the counts of this chunk to the summary of the run.
+	 *
+	 * @param summary
+	 *            the summary of the run
+	 */
+	void addTo(BatchSummary summary) {
+		int errors = this.errorLines.size();
+		for (int i = 0; i < errors; i++) {
+			summary.addError(this.errorLines.get(i), this.errorKinds.get(i));
+		}
+		summary.addRows(this.size - errors);
+		summary.addWorker(this.worker, this.size, this.elapsedNanos);
+	}
+
+	/*
+	 * Writes a row that could not be calculated and records the error of the
+	 * chunk.
+	 */
+	private void addError(int row, String caseId, ChargeError error) {
+		this.results.append(caseId);
+		for (int i = 0; i < RESULT_SEPARATORS; i++) {
+			this.results.append(this.separator);
+		}
+		this.results.append(error.getMessage()).append('\n');
+		this.errorLines.add(this.lineNumbers[row]);
+		this.errorKinds.add(error);
+	}
+
+	/*
+	 * Writes a calculated case. The charge and extra minutes are the
+	 * ChargeMaster split of the total at 999 minutes.
+	 */
+	private void appendResult(String caseId, long totalMinutes) {
+		this.results.append(caseId).append(this.separator);
+		this.results.append(totalMinutes).append(this.separator);
+		this.results.append(ChargeResult.chargeMinutes(totalMinutes)).append(this.separator);
+		this.results.append(ChargeResult.extraMinutes(totalMinutes)).append(this.separator);
+		this.results.append('\n');
+	}
+}
@@ -0,0 +1,266 @@
+package batch;
+
+import main.ChargeCache;
+import main.ChargeCalculator;
+import main.ChargeError;
+import main.ChargeMetrics;
+import main.ChargeTime;
+import main.ChargeValidator;
+import store.CaseStore;
+
+/**
+ * CaseRow reads and calculates one case row of a batch input: the case id,
+ * start, stop and multi-day flag, split at a separator. Entries in the form of
+ * "MMdd HHmm" are looked up in the shared ChargeCache against the year of the
+ * run, and entries that carry their years ("yyyyMMdd HHmm") are calculated
+ * straight into a result array. Every row is checked by ChargeValidator first,
+ * so a bad row gives a ChargeError and no exception.
+ *
+ * The batch calculation (see CaseChunk) and the batch import screen both read
+ * their rows through a CaseRow, so the two take exactly the same rows. A
+ * CaseRow is reused from one row to the next and is not safe for use by more
+ * than one thread at once.
+ *
+ * @author Kimberle McGill
+ * @version 1.2.261018
+ */
+public final class CaseRow {
+
+	/** Number of fields in a case row */
+	public static final int FIELDS = 4;
+
+	/* Separator of the fields */
+	private final char separator;
+	/* Year of the stop dates of "MMdd HHmm" entries */
+	private final int year;
+	/* Fields of the row */
+	private final String[] fields = new String[FIELDS];
+	/* Result of a row with years */
+	private final int[] result = new int[ChargeCalculator.RESULT_SIZE];
+	/* Case id of the row */
+	private String caseId;
+	/* Packed start, INVALID if not in the form of "MMdd HHmm" */
+	private int startEntry;
+	/* Packed stop, INVALID if not in the form of "MMdd HHmm" */
+	private int stopEntry;
+	/* Start of a row with years, INVALID_MINUTE if not read */
+	private long startMinute;
+	/* Stop of a row with years, INVALID_MINUTE if not read */
+	private long stopMinute;
+	/* Is this a multi-day charge? */
+	private boolean multi;
+	/* Calculated charges of a "MMdd HHmm" row, null otherwise */
+	private ChargeTime charge;
+	/* Total minutes of the row, 0 if it was not calculated */
+	private long totalMinutes;
+	/* Was the row calculated? */
+	private boolean calculated;
+	/* Index of the case id field */
+	private final static int CASE_ID = 0;
+	/* Index of the start field */
+	private final static int START = 1;
+	/* Index of the stop field */
+	private final static int STOP = 2;
+	/* Index of the multi-day field */
+	private final static int MULTI = 3;
+
+	/**
+	 * Constructs a new CaseRow.
+	 *
+	 * @param separator
+	 *            the separator of the fields
+	 * @param year
+	 *            the year of the stop dates of "MMdd HHmm" entries
+	 */
+	public CaseRow(char separator, int year) {
+		this.separator = separator;
+		this.year = year;
+	}
+
+	/**
+	 * Reads and calculates a case row, replacing the row read before.
+	 *
+	 * @param line
+	 *            the case row
+	 * @return why the row could not be calculated, or null if it was
+	 */
+	public ChargeError read(String line) {
+		this.startEntry = ChargeCalculator.INVALID;
+		this.stopEntry = ChargeCalculator.INVALID;
+		this.startMinute = ChargeCalculator.INVALID_MINUTE;
+		this.stopMinute = ChargeCalculator.INVALID_MINUTE;
+		this.multi = false;
+		this.charge = null;
+		this.totalMinutes = 0;
+		this.calculated = false;
+		int count = split(line);
+		this.caseId = this.fields[CASE_ID];
+		if (count != FIELDS) {
+			return ChargeError.FIELDS;
+		}
+
+		this.startEntry = ChargeCalculator.parseEntry(this.fields[START]);
+		this.stopEntry = ChargeCalculator.parseEntry(this.fields[STOP]);
+		int multiFlag = ChargeValidator.parseMulti(this.fields[MULTI]);
+		this.multi = multiFlag == ChargeValidator.MULTI_DAY;
+		if (this.startEntry == ChargeCalculator.INVALID || this.stopEntry == ChargeCalculator.INVALID) {
+			this.startEntry = ChargeCalculator.INVALID;
+			this.stopEntry = ChargeCalculator.INVALID;
+			return readDated(multiFlag);
+		}
+		ChargeError error = multiFlag == ChargeCalculator.INVALID ? ChargeError.MULTI_FLAG
+				: ChargeValidator.check(this.startEntry, this.stopEntry, this.multi, this.year);
+		if (error != null) {
+			return error;
+		}
+		this.charge = ChargeCache.shared().get(this.startEntry, this.stopEntry, this.multi, this.year);
+		this.totalMinutes = this.charge.getTotalMinutes();
+		this.calculated = true;
+		return null;
+	}
+
+	/**
+	 * Adds the calculated case to a store.
+	 *
+	 * @param store
+	 *            the store the case is added to
+	 * @throws IllegalArgumentException
+	 *             if the case is outside the years a CaseStore holds
+	 * @throws IllegalStateException
+	 *             if the row was not calculated
+	 */
+	public void addTo(CaseStore store) {
+		if (!this.calculated) {
+			throw new IllegalStateException("Row was not calculated");
+		} else if (this.charge != null) {
+			store.add(this.charge);
+		} else {
+			store.add(this.startMinute, this.stopMinute, this.multi, this.result);
+		}
+	}
+
+	/**
+	 * Gets the case id of the row.
+	 *
+	 * @return the case id, trimmed
+	 */
+	public String getCaseId() {
+		return this.caseId;
+	}
+
+	/**
+	 * Is the row a multi-day charge?
+	 *
+	 * @return true if the multi-day flag was read as multi-day
+	 */
+	public boolean isMulti() {
+		return this.multi;
+	}
+
+	/**
+	 * Did the row carry its years?
+	 *
+	 * @return true if both entries were read in the form of "yyyyMMdd HHmm",
+	 *         whether or not the row could then be calculated
+	 */
+	public boolean isDated() {
+		return this.startMinute != ChargeCalculator.INVALID_MINUTE
+				&& this.stopMinute != ChargeCalculator.INVALID_MINUTE;
+	}
+
+	/**
+	 * Gets the packed start of a "MMdd HHmm" row.
+	 *
+	 * @return the packed start, or ChargeCalculator.INVALID if it was not read
+	 */
+	public int getStartEntry() {
+		return this.startEntry;
+	}
+
+	/**
+	 * Gets the packed stop of a "MMdd HHmm" row.
+	 *
+	 * @return the packed stop, or ChargeCalculator.INVALID if it was not read
+	 */
+	public int getStopEntry() {
+		return this.stopEntry;
+	}
+
+	/**
+	 * Gets the start of a row with years.
+	 *
+	 * @return the start in minutes since 1970-01-01 00:00, or
+	 *         ChargeCalculator.INVALID_MINUTE if it was not read
+	 */
+	public long getStartMinute() {
+		return this.startMinute;
+	}
+
+	/**
+	 * Gets the stop of a row with years.
+	 *
+	 * @return the stop in minutes since 1970-01-01 00:00, or
+	 *         ChargeCalculator.INVALID_MINUTE if it was not read
+	 */
+	public long getStopMinute() {
+		return this.stopMinute;
+	}
+
+	/**
+	 * Gets the total minutes of the row.
+	 *
+	 * @return the total minutes charged, 0 if the row was not calculated
+	 */
+	public long getTotalMinutes() {
+		return this.totalMinutes;
+	}
+
+	/*
+	 * Reads and calculates a row whose entries are not both "MMdd HHmm", so
+	 * should carry their years, straight into the result array, without the
+	 * cache.
+	 */
+	private ChargeError readDated(int multiFlag) {
+		this.startMinute = ChargeCalculator.parseDateTime(this.fields[START]);
+		this.stopMinute = ChargeCalculator.parseDateTime(this.fields[STOP]);
+		ChargeError error;
+		if (this.startMinute == ChargeCalculator.INVALID_MINUTE) {
+			error = ChargeValidator.checkDateTime(this.fields[START]);
+		} else if (this.stopMinute == ChargeCalculator.INVALID_MINUTE) {
+			error = ChargeValidator.checkDateTime(this.fields[STOP]);
+		} else if (multiFlag == ChargeCalculator.INVALID) {
+			error = ChargeError.MULTI_FLAG;
+		} else {
+			error = ChargeValidator.checkSpan(this.startMinute, this.stopMinute);
+		}
+		if (error != null) {
+			return error;
+		}
+		ChargeCalculator.calculate(this.startMinute, this.stopMinute, this.result);
+		ChargeMetrics.shared().countCase(this.stopMinute, this.multi, this.result);
+		this.totalMinutes = this.result[ChargeCalculator.TOTAL_MINUTES];
+		this.calculated = true;
+		return null;
+	}
+
+	/*
+	 * Splits the line at the separator into the fields, trimming each.
+	 * Returns the number of fields found, which may be more than fit.
+	 */
+	private int split(String line) {
+		int count = 0;
+		int from = 0;
+		while (from <= line.length()) {
+			int to = line.indexOf(this.separator, from);
+			if (to < 0) {
+				to = line.length();
+			}
+			if (count < this.fields.length) {
+				this.fields[count] = line.substring(from, to).trim();
+			}
+			count++;
+			from = to + 1;
+		}
+		return count;
+	}
+}
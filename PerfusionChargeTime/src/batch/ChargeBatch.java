@@ -0,0 +1,346 @@
+package batch;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import main.ChargeCache;
+import main.ChargeMetrics;
+import store.CaseBuffer;
+import store.CaseStore;
+
+/**
+ * ChargeBatch calculates the charges for a whole file of perfusion cases
+ * without the user interface. Each row of the input holds a case id, the start
+ * date and time ("MMdd HHmm"), the stop date and time ("MMdd HHmm") and the
+ * multi-day flag, separated by commas (CSV) or tabs (TSV). A bad row is
+ * written out with its error instead of stopping the run. Rows whose entries
+ * carry their years ("yyyyMMdd HHmm"), for reprocessing past years, are
+ * calculated straight from them, whatever their length.
+ *
+ * Rows are read in chunks that are calculated in parallel on a fork-join pool
+ * and written out in input order. Only a few chunks per worker are held at
+ * once, so the file is never loaded into memory. The calculated cases may
+ * also be collected into a CaseStore, in input order, for questions about the
+ * whole run once it is done, or into a CaseBuffer outside the heap for runs
+ * too large to keep on it.
+ *
+ * @author Kimberle McGill
+ * @version 1.2.261018
+ */
+public class ChargeBatch {
+
+	/* Number of worker threads */
+	private final int parallelism;
+	/* Year of the stop dates */
+	private final int year;
+	/* Store the calculated cases are added to, null if none */
+	private CaseStore store;
+	/* Off-heap buffer the calculated cases are added to, null if none */
+	private CaseBuffer buffer;
+	/* Size of the read and write buffers */
+	private final static int BUFFER_SIZE = 1 << 16;
+	/* Number of rows in a chunk */
+	private final static int CHUNK_ROWS = 4096;
+	/* Number of chunks each worker may have waiting */
+	private final static int CHUNKS_PER_WORKER = 4;
+	/* Comma separator */
+	private final static char COMMA = ',';
+	/* Tab separator */
+	private final static char TAB = '\t';
+	/* Comment line marker */
+	private final static char COMMENT = '#';
+	/* Exit status for bad arguments */
+	private final static int EXIT_USAGE = 2;
+	/* Usage line */
+	private final static String USAGE = "Usage: ChargeBatch [-n] [-s] [-o] [-y year] [-p threads | -m] <cases file> <results file>";
+
+	/**
+	 * Constructs a new ChargeBatch that uses every processor and takes the stop
+	 * dates to be in the current year.
+	 */
+	public ChargeBatch() {
+		this(Runtime.getRuntime().availableProcessors(), LocalDate.now().getYear());
+	}
+
+	/**
+	 * Constructs a new ChargeBatch.
+	 *
+	 * @param parallelism
+	 *            the number of worker threads
+	 * @param year
+	 *            the year of the stop dates
+	 * @throws IllegalArgumentException
+	 *             if parallelism is less than 1
+	 */
+	public ChargeBatch(int parallelism, int year) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1");
+		}
+		this.parallelism = parallelism;
+		this.year = year;
+	}
+
+	/**
+	 * Sets the store the calculated cases of each run are added to.
+	 *
+	 * @param store
+	 *            the store of the cases, or null to not collect them
+	 */
+	public void setStore(CaseStore store) {
+		this.store = store;
+	}
+
+	/**
+	 * Sets the off-heap buffer the calculated cases of each run are added to.
+	 * The buffer is not closed by the batch.
+	 *
+	 * @param buffer
+	 *            the buffer of the cases, or null to not collect them
+	 */
+	public void setBuffer(CaseBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Calculates the charges for every case row read from the given input and
+	 * writes one result row per case to the given output, in input order. The
+	 * separator of the results is the same as the separator of the input. A
+	 * first line that is not a case (a header) is skipped, as are blank lines
+	 * and lines starting with '#'.
+	 *
+	 * @param in
+	 *            the case rows to calculate
+	 * @param out
+	 *            where the result rows are written
+	 * @return the totals for the run
+	 * @throws IOException
+	 *             if the input cannot be read or the output cannot be written
+	 */
+	public BatchSummary process(Reader in, Writer out) throws IOException {
+		BatchSummary summary = new BatchSummary();
+		long begin = System.nanoTime();
+
+		BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in
+				: new BufferedReader(in, BUFFER_SIZE);
+		ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+		Deque<Future<CaseChunk>> pending = new ArrayDeque<Future<CaseChunk>>();
+		int maxPending = this.parallelism * CHUNKS_PER_WORKER;
+
+		try {
+			char separator = 0;
+			CaseChunk chunk = null;
+			long lineNumber = 0;
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				String trimmed = line.trim();
+				if (trimmed.isEmpty() || trimmed.charAt(0) == COMMENT) {
+					continue;
+				}
+
+				// the first row decides the separator and may be a header
+				if (separator == 0) {
+					separator = line.indexOf(TAB) >= 0 ? TAB : COMMA;
+					writeHeader(out, separator);
+					if (isHeader(line, separator)) {
+						continue;
+					}
+				}
+
+				if (chunk == null) {
+					chunk = new CaseChunk(CHUNK_ROWS, separator, this.year,
+							this.store != null || this.buffer != null);
+				}
+				chunk.add(line, lineNumber);
+				if (chunk.isFull()) {
+					pending.addLast(pool.submit(chunk));
+					chunk = null;
+					// write finished chunks in order, waiting if too many are queued
+					while (pending.size() >= maxPending || (!pending.isEmpty() && pending.peekFirst().isDone())) {
+						write(pending.removeFirst(), out, summary);
+					}
+				}
+			}
+
+			if (chunk != null) {
+				pending.addLast(pool.submit(chunk));
+			}
+			while (!pending.isEmpty()) {
+				write(pending.removeFirst(), out, summary);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+
+		out.flush();
+		summary.setElapsedNanos(System.nanoTime() - begin);
+		return summary;
+	}
+
+	/*
+	 * Waits for a chunk to be calculated, then writes its results and adds its
+	 * counts to the summary.
+	 */
+	private void write(Future<CaseChunk> pending, Writer out, BatchSummary summary) throws IOException {
+		CaseChunk chunk;
+		try {
+			chunk = pending.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Batch interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Batch failed", e.getCause());
+		}
+		out.append(chunk.getResults());
+		chunk.addTo(summary);
+		if (this.store != null) {
+			this.store.addAll(chunk.getStore());
+		}
+		if (this.buffer != null) {
+			this.buffer.addAll(chunk.getStore());
+		}
+	}
+
+	/*
+	 * Is this line a header rather than a case (the start is not a digit)?
+	 */
+	private boolean isHeader(String line, char separator) {
+		int at = line.indexOf(separator);
+		while (at >= 0 && at + 1 < line.length() && line.charAt(at + 1) == ' ') {
+			at++;
+		}
+		return at < 0 || at + 1 >= line.length() || !Character.isDigit(line.charAt(at + 1));
+	}
+
+	/*
+	 * Writes the header of the results.
+	 */
+	private void writeHeader(Writer out, char separator) throws IOException {
+		out.write("case_id");
+		out.write(separator);
+		out.write("total_minutes");
+		out.write(separator);
+		out.write("charge_minutes");
+		out.write(separator);
+		out.write("extra_minutes");
+		out.write(separator);
+		out.write("error\n");
+	}
+
+	/**
+	 * Main method which runs a batch calculation from an input file to a results
+	 * file and reports the totals.
+	 *
+	 * @param args
+	 *            options, then the input file and the results file. "-p" and a
+	 *            number sets the number of worker threads; "-m" memory-maps the
+	 *            input instead (see MappedChargeBatch); "-n" turns off the
+	 *            charge cache; "-y" and a year sets the year of the stop dates
+	 *            (this year if not given); "-s" keeps the calculated cases in a
+	 *            CaseStore and reports their totals; "-o" keeps them in a
+	 *            CaseBuffer outside the heap
+	 */
+	public static void main(String[] args) {
+		int parallelism = Runtime.getRuntime().availableProcessors();
+		int year = LocalDate.now().getYear();
+		boolean mapped = false;
+		CaseStore store = null;
+		CaseBuffer buffer = null;
+		int first = 0;
+		try {
+			while (first < args.length && args[first].startsWith("-")) {
+				if (args[first].equals("-m")) {
+					mapped = true;
+					first++;
+				} else if (args[first].equals("-s")) {
+					store = new CaseStore();
+					first++;
+				} else if (args[first].equals("-o")) {
+					buffer = new CaseBuffer();
+					first++;
+				} else if (args[first].equals("-n")) {
+					ChargeCache.shared().setEnabled(false);
+					first++;
+				} else if (args[first].equals("-p") && first + 1 < args.length) {
+					parallelism = Integer.parseInt(args[first + 1]);
+					first += 2;
+				} else if (args[first].equals("-y") && first + 1 < args.length) {
+					year = Integer.parseInt(args[first + 1]);
+					first += 2;
+				} else {
+					break;
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			System.err.println(USAGE);
+			System.exit(EXIT_USAGE);
+		}
+		if (args.length - first != 2 || parallelism < 1) {
+			System.err.println(USAGE);
+			System.exit(EXIT_USAGE);
+		}
+
+		Path input = Paths.get(args[first]);
+		Path results = Paths.get(args[first + 1]);
+		try {
+			BatchSummary summary;
+			if (mapped) {
+				MappedChargeBatch batch = new MappedChargeBatch(year);
+				batch.setStore(store);
+				batch.setBuffer(buffer);
+				summary = batch.process(input, results);
+			} else {
+				try (Reader in = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+						Writer out = new BufferedWriter(Files.newBufferedWriter(results, StandardCharsets.UTF_8),
+								BUFFER_SIZE)) {
+					ChargeBatch batch = new ChargeBatch(parallelism, year);
+					batch.setStore(store);
+					batch.setBuffer(buffer);
+					summary = batch.process(in, out);
+				}
+			}
+			for (String message : summary.getErrorMessages()) {
+				System.err.println(message);
+			}
+			for (String worker : summary.getWorkerSummaries()) {
+				System.out.println(worker);
+			}
+			System.out.println(summary);
+			if (summary.getErrors() > 0) {
+				System.out.println("Errors by kind: " + summary.getErrorCounts());
+			}
+			System.out.println(ChargeCache.shared());
+			if (store != null) {
+				System.out.println("All cases: " + store.describe(CaseStore.Filter.ALL));
+				System.out.println("Multi-day: " + store.describe(CaseStore.Filter.ALL.multiDay()));
+			}
+			if (buffer != null) {
+				System.out.println(buffer);
+			}
+			if (ChargeMetrics.shared().isEnabled()) {
+				System.out.print(ChargeMetrics.shared().dump());
+			}
+		} catch (IOException e) {
+			System.err.println("Batch failed: " + e.getMessage());
+			System.exit(1);
+		} finally {
+			if (buffer != null) {
+				buffer.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,432 @@
+package batch;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import main.ChargeCache;
+import main.ChargeCalculator;
+import main.ChargeError;
+import main.ChargeMetrics;
+import main.ChargeResult;
+import main.ChargeTime;
+import main.ChargeValidator;
+import store.CaseBuffer;
+import store.CaseStore;
+
+/**
+ * MappedChargeBatch calculates a case file the same way as ChargeBatch, but
+ * memory-maps the input and reads the case rows straight from the mapped
+ * bytes. The "MMdd HHmm" (or "yyyyMMdd HHmm") fields are parsed in place and
+ * the case ids are copied byte for byte into the results, so no String is made
+ * for any field and heap use stays the same whatever the size of the file.
+ * Meant for multi-gigabyte exports in plain ASCII. Like ChargeBatch, it may
+ * collect the calculated cases into a CaseStore or an off-heap CaseBuffer.
+ *
+ * @author Kimberle McGill
+ * @version 1.2.261018
+ */
+public class MappedChargeBatch {
+
+	/* Year of the stop dates */
+	private final int year;
+	/* Start of each field of the current row */
+	private final int[] fieldStart = new int[FIELDS];
+	/* End of each field of the current row */
+	private final int[] fieldEnd = new int[FIELDS];
+	/* Buffered results waiting to be written */
+	private final ByteBuffer output = ByteBuffer.allocate(BUFFER_SIZE);
+	/* Digits of the number being written */
+	private final byte[] digits = new byte[DIGITS];
+	/* Result of a case whose entries carry their years */
+	private final int[] result = new int[ChargeCalculator.RESULT_SIZE];
+	/* Store the calculated cases are added to, null if none */
+	private CaseStore store;
+	/* Off-heap buffer the calculated cases are added to, null if none */
+	private CaseBuffer buffer;
+	/* Channel the results are written to */
+	private FileChannel out;
+	/* Separator of the fields, 0 until the first row is read */
+	private byte separator;
+	/* Size of each mapped region of the input */
+	private final static int REGION_SIZE = 1 << 28;
+	/* Size of the write buffer */
+	private final static int BUFFER_SIZE = 1 << 16;
+	/* Room left in the write buffer before it is flushed */
+	private final static int ROW_ROOM = 1 << 10;
+	/* Most digits of an int */
+	private final static int DIGITS = 11;
+	/* Number of fields in a case row */
+	private final static int FIELDS = 4;
+	/* Index of the case id field */
+	private final static int CASE_ID = 0;
+	/* Index of the start field */
+	private final static int START = 1;
+	/* Index of the stop field */
+	private final static int STOP = 2;
+	/* Index of the multi-day field */
+	private final static int MULTI = 3;
+	/* Header of the results */
+	private final static String HEADER = "case_id,total_minutes,charge_minutes,extra_minutes,error\n";
+
+	/**
+	 * Constructs a new MappedChargeBatch.
+	 *
+	 * @param year
+	 *            the year of the stop dates
+	 */
+	public MappedChargeBatch(int year) {
+		this.year = year;
+	}
+
+	/**
+	 * Sets the store the calculated cases of each run are added to.
+	 *
+	 * @param store
+	 *            the store of the cases, or null to not collect them
+	 */
+	public void setStore(CaseStore store) {
+		this.store = store;
+	}
+
+	/**
+	 * Sets the off-heap buffer the calculated cases of each run are added to.
+	 * The buffer is not closed by the batch.
+	 *
+	 * @param buffer
+	 *            the buffer of the cases, or null to not collect them
+	 */
+	public void setBuffer(CaseBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Calculates every case row of the input file and writes one result row per
+	 * case to the results file, in the same layout as ChargeBatch.
+	 *
+	 * @param input
+	 *            the case file
+	 * @param results
+	 *            the results file, replaced if it exists
+	 * @return the totals for the run
+	 * @throws IOException
+	 *             if the input cannot be read or the results cannot be written
+	 */
+	public BatchSummary process(Path input, Path results) throws IOException {
+		BatchSummary summary = new BatchSummary();
+		long begin = System.nanoTime();
+		this.separator = 0;
+		this.output.clear();
+
+		try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(results, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+						StandardOpenOption.TRUNCATE_EXISTING)) {
+			this.out = out;
+			long size = in.size();
+			long position = 0;
+			long lineNumber = 0;
+
+			while (position < size) {
+				long length = Math.min(REGION_SIZE, size - position);
+				boolean last = position + length == size;
+				MappedByteBuffer region = in.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+				// every whole line of the region; a partial last line starts the next region
+				int lineStart = 0;
+				int limit = (int) length;
+				for (int i = 0; i < limit; i++) {
+					if (region.get(i) == '\n') {
+						lineNumber++;
+						processLine(region, lineStart, i, lineNumber, summary);
+						lineStart = i + 1;
+					}
+				}
+				if (last && lineStart < limit) {
+					lineNumber++;
+					processLine(region, lineStart, limit, lineNumber, summary);
+					lineStart = limit;
+				}
+				if (lineStart == 0 && !last) {
+					throw new IOException("Line " + (lineNumber + 1) + " is too long");
+				}
+				position += lineStart;
+			}
+			flush();
+		} finally {
+			this.out = null;
+		}
+
+		summary.setElapsedNanos(System.nanoTime() - begin);
+		return summary;
+	}
+
+	/*
+	 * Calculates one line of the input, from start up to (not including) end.
+	 */
+	private void processLine(ByteBuffer bytes, int start, int end, long lineNumber, BatchSummary summary)
+			throws IOException {
+		if (end > start && bytes.get(end - 1) == '\r') {
+			end--;
+		}
+		// blank and comment lines are skipped like ChargeBatch does, on the trimmed line
+		int first = start;
+		while (first < end && isBlank(bytes.get(first))) {
+			first++;
+		}
+		if (first == end || bytes.get(first) == '#') {
+			return;
+		}
+
+		// the first row decides the separator and may be a header
+		if (this.separator == 0) {
+			this.separator = indexOf(bytes, start, end, (byte) '\t') >= 0 ? (byte) '\t' : (byte) ',';
+			writeHeader();
+			int at = indexOf(bytes, start, end, this.separator);
+			int next = at < 0 ? end : skipSpaces(bytes, at + 1, end);
+			if (next == end || !isDigit(bytes.get(next))) {
+				return;
+			}
+		}
+
+		if (this.output.remaining() < ROW_ROOM) {
+			flush();
+		}
+
+		int count = split(bytes, start, end);
+		if (count != FIELDS) {
+			writeError(bytes, count > 0, ChargeError.FIELDS, lineNumber, summary);
+			ChargeMetrics.shared().countError(ChargeError.FIELDS);
+			return;
+		}
+
+		int startEntry = ChargeCalculator.parseEntry(bytes, this.fieldStart[START],
+				this.fieldEnd[START] - this.fieldStart[START]);
+		int stopEntry = ChargeCalculator.parseEntry(bytes, this.fieldStart[STOP],
+				this.fieldEnd[STOP] - this.fieldStart[STOP]);
+		int multi = ChargeValidator.parseMulti(bytes, this.fieldStart[MULTI], this.fieldEnd[MULTI]);
+		long startMinute = ChargeCalculator.INVALID_MINUTE;
+		long stopMinute = ChargeCalculator.INVALID_MINUTE;
+		boolean dated = startEntry == ChargeCalculator.INVALID || stopEntry == ChargeCalculator.INVALID;
+		ChargeError error = null;
+		if (dated) {
+			// entries with their own years
+			startMinute = ChargeCalculator.parseDateTime(bytes, this.fieldStart[START],
+					this.fieldEnd[START] - this.fieldStart[START]);
+			stopMinute = ChargeCalculator.parseDateTime(bytes, this.fieldStart[STOP],
+					this.fieldEnd[STOP] - this.fieldStart[STOP]);
+			if (startMinute == ChargeCalculator.INVALID_MINUTE) {
+				error = ChargeValidator.checkDateTime(bytes, this.fieldStart[START],
+						this.fieldEnd[START] - this.fieldStart[START]);
+			} else if (stopMinute == ChargeCalculator.INVALID_MINUTE) {
+				error = ChargeValidator.checkDateTime(bytes, this.fieldStart[STOP],
+						this.fieldEnd[STOP] - this.fieldStart[STOP]);
+			}
+		}
+		if (error == null && multi == ChargeCalculator.INVALID) {
+			error = ChargeError.MULTI_FLAG;
+		}
+		if (error == null) {
+			error = dated ? ChargeValidator.checkSpan(startMinute, stopMinute)
+					: ChargeValidator.check(startEntry, stopEntry, multi == ChargeValidator.MULTI_DAY, this.year);
+		}
+		if (error != null) {
+			writeError(bytes, true, error, lineNumber, summary);
+			ChargeMetrics.shared().countError(error);
+			return;
+		}
+		int totalMinutes;
+		try {
+			if (dated) {
+				ChargeCalculator.calculate(startMinute, stopMinute, this.result);
+				ChargeMetrics.shared().countCase(stopMinute, multi == ChargeValidator.MULTI_DAY, this.result);
+				totalMinutes = this.result[ChargeCalculator.TOTAL_MINUTES];
+				if (this.store != null) {
+					this.store.add(startMinute, stopMinute, multi == ChargeValidator.MULTI_DAY, this.result);
+				}
+				if (this.buffer != null) {
+					this.buffer.add(startMinute, stopMinute, multi == ChargeValidator.MULTI_DAY, this.result);
+				}
+			} else {
+				ChargeTime charge = ChargeCache.shared().get(startEntry, stopEntry,
+						multi == ChargeValidator.MULTI_DAY, this.year);
+				totalMinutes = (int) charge.getTotalMinutes();
+				if (this.store != null) {
+					this.store.add(charge);
+				}
+				if (this.buffer != null) {
+					this.buffer.add(charge);
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			// only a case outside the years of the store or buffer gets here,
+			// already counted as a case in the metrics, so not as an error
+			writeError(bytes, true, ChargeError.SPAN, lineNumber, summary);
+			return;
+		}
+
+		writeCaseId(bytes);
+		this.output.put(this.separator);
+		writeInt(totalMinutes);
+		this.output.put(this.separator);
+		writeInt((int) ChargeResult.chargeMinutes(totalMinutes));
+		this.output.put(this.separator);
+		writeInt((int) ChargeResult.extraMinutes(totalMinutes));
+		this.output.put(this.separator);
+		this.output.put((byte) '\n');
+		summary.addRows(1);
+	}
+
+	/*
+	 * Finds the fields of a line, trimmed like String.trim. Returns the number
+	 * of fields found, which may be more than fit.
+	 */
+	private int split(ByteBuffer bytes, int start, int end) {
+		int count = 0;
+		int from = start;
+		while (from <= end) {
+			int to = indexOf(bytes, from, end, this.separator);
+			if (to < 0) {
+				to = end;
+			}
+			if (count < FIELDS) {
+				int first = from;
+				while (first < to && isBlank(bytes.get(first))) {
+					first++;
+				}
+				int last = to;
+				while (last > first && isBlank(bytes.get(last - 1))) {
+					last--;
+				}
+				this.fieldStart[count] = first;
+				this.fieldEnd[count] = last;
+			}
+			count++;
+			from = to + 1;
+		}
+		return count;
+	}
+
+	/*
+	 * Writes a row that could not be calculated and records the error in the
+	 * summary.
+	 */
+	private void writeError(ByteBuffer bytes, boolean hasCaseId, ChargeError error, long lineNumber,
+			BatchSummary summary) throws IOException {
+		if (hasCaseId) {
+			writeCaseId(bytes);
+		}
+		for (int i = CASE_ID; i < FIELDS; i++) {
+			this.output.put(this.separator);
+		}
+		String message = error.getMessage();
+		for (int i = 0; i < message.length(); i++) {
+			this.output.put((byte) message.charAt(i));
+		}
+		this.output.put((byte) '\n');
+		summary.addError(lineNumber, error);
+	}
+
+	/*
+	 * Copies the whole case id of the current row into the results, flushing
+	 * first so the rest of the row still fits. An id longer than the write
+	 * buffer is written straight from the input.
+	 */
+	private void writeCaseId(ByteBuffer bytes) throws IOException {
+		int start = this.fieldStart[CASE_ID];
+		int end = this.fieldEnd[CASE_ID];
+		if (this.output.remaining() < end - start + ROW_ROOM) {
+			flush();
+			if (this.output.remaining() < end - start + ROW_ROOM) {
+				ByteBuffer caseId = bytes.duplicate();
+				caseId.limit(end);
+				caseId.position(start);
+				while (caseId.hasRemaining()) {
+					this.out.write(caseId);
+				}
+				return;
+			}
+		}
+		for (int i = start; i < end; i++) {
+			this.output.put(bytes.get(i));
+		}
+	}
+
+	/*
+	 * Writes a whole number as ASCII digits.
+	 */
+	private void writeInt(int value) {
+		long number = value;
+		if (number < 0) {
+			this.output.put((byte) '-');
+			number = -number;
+		}
+		int count = 0;
+		do {
+			this.digits[count++] = (byte) ('0' + number % 10);
+			number /= 10;
+		} while (number > 0);
+		while (count > 0) {
+			this.output.put(this.digits[--count]);
+		}
+	}
+
+	/*
+	 * Writes the header of the results, with the separator of the input.
+	 */
+	private void writeHeader() {
+		for (int i = 0; i < HEADER.length(); i++) {
+			char c = HEADER.charAt(i);
+			this.output.put(c == ',' ? this.separator : (byte) c);
+		}
+	}
+
+	/*
+	 * Writes the buffered results to the results file.
+	 */
+	private void flush() throws IOException {
+		this.output.flip();
+		while (this.output.hasRemaining()) {
+			this.out.write(this.output);
+		}
+		this.output.clear();
+	}
+
+	/*
+	 * Returns the index of the first matching byte from start up to end, or -1.
+	 */
+	private static int indexOf(ByteBuffer bytes, int start, int end, byte b) {
+		for (int i = start; i < end; i++) {
+			if (bytes.get(i) == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * Returns the index of the first byte from start that is not a space.
+	 */
+	private static int skipSpaces(ByteBuffer bytes, int start, int end) {
+		while (start < end && bytes.get(start) == ' ') {
+			start++;
+		}
+		return start;
+	}
+
+	/*
+	 * Is the byte blank, as String.trim sees it?
+	 */
+	private static boolean isBlank(byte b) {
+		return b >= 0 && b <= ' ';
+	}
+
+	/*
+	 * Is the byte an ASCII digit?
+	 */
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+}
@@ -0,0 +1,317 @@
+package cli;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+import main.ChargeCache;
+import main.ChargeCalculator;
+import main.ChargeError;
+import main.ChargeReport;
+import main.ChargeResult;
+import main.ChargeTime;
+import main.ChargeValidator;
+
+/**
+ * ChargeCli calculates perfusion charges from the command line with the same
+ * rules as ChargeTime, for scripts and headless servers. One case may be given
+ * as arguments:
+ *
+ * <pre>
+ * ChargeCli 1230 2200 0102 0130 true
+ * </pre>
+ *
+ * or, with no case arguments, cases are read from standard input one per line
+ * and one result line per case is written to standard output, in the same
+ * order. A case line is a start, a stop and an optional multi-day flag,
+ * separated by commas, tabs or spaces ("1230 2200,0102 0130,true"). Blank
+ * lines and lines starting with # are skipped.
+ *
+ * With "-z" and a time zone (for example "-z America/Chicago") the minutes
+ * that actually pass in that zone are charged, so a case across the night the
+ * clocks change is an hour shorter or longer than the wall clock shows.
+ *
+ * Input and output are buffered and nothing from AWT or Swing is loaded, so
+ * the calculator starts quickly enough to be run many times from a script.
+ *
+ * @author Kimberle McGill
+ * @version 1.2.261018
+ */
+public class ChargeCli {
+
+	/* Year of the stop dates */
+	private final int year;
+	/* Time zone of the entries, null for the wall clock */
+	private final ZoneId zone;
+	/* Layout of each result */
+	private final Layout layout;
+	/* Number of cases that could not be calculated */
+	private long errors;
+	/* Size of the input and output buffers */
+	private final static int BUFFER_SIZE = 1 << 16;
+	/* Number of entry fields in a case with spaces between its fields */
+	private final static int SPACED_FIELDS = 4;
+	/* Exit status when a case could not be calculated */
+	private final static int EXIT_ERROR = 1;
+	/* Exit status for bad arguments */
+	private final static int EXIT_USAGE = 2;
+	/* Usage message */
+	private final static String USAGE = "Usage: ChargeCli [-y year] [-z zone] [-f line|text|csv|json] [start stop [multi]]";
+
+	/**
+	 * Layout of the result of each case.
+	 */
+	public enum Layout {
+		/** start,stop,multi,total_minutes,charge_minutes,extra_minutes,error */
+		LINE,
+		/** The text shown in the user interface */
+		TEXT,
+		/** A CSV report of the days and total */
+		CSV,
+		/** One JSON object per line */
+		JSON
+	}
+
+	/**
+	 * Constructs a new ChargeCli.
+	 *
+	 * @param year
+	 *            the year of the stop dates
+	 * @param layout
+	 *            the layout of each result
+	 */
+	public ChargeCli(int year, Layout layout) {
+		this(year, null, layout);
+	}
+
+	/**
+	 * Constructs a new ChargeCli counting the minutes that actually pass in the
+	 * given time zone.
+	 *
+	 * @param year
+	 *            the year of the stop dates
+	 * @param zone
+	 *            the time zone of the entries, or null for the wall clock
+	 * @param layout
+	 *            the layout of each result
+	 */
+	public ChargeCli(int year, ZoneId zone, Layout layout) {
+		this.year = year;
+		this.zone = zone;
+		this.layout = layout;
+	}
+
+	/**
+	 * Calculates every case line of the input and writes its result to the
+	 * output.
+	 *
+	 * @param in
+	 *            the case lines
+	 * @param out
+	 *            where the results are written
+	 * @return the number of cases that could not be calculated
+	 * @throws IOException
+	 *             if the input cannot be read or the output cannot be written
+	 */
+	public long process(Reader in, Writer out) throws IOException {
+		BufferedReader lines = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in, BUFFER_SIZE);
+		StringBuilder result = new StringBuilder();
+		boolean blocks = this.layout == Layout.TEXT || this.layout == Layout.CSV;
+		boolean first = true;
+		String line;
+		while ((line = lines.readLine()) != null) {
+			String trimmed = line.trim();
+			if (trimmed.isEmpty() || trimmed.charAt(0) == '#') {
+				continue;
+			}
+			result.setLength(0);
+
+			// a blank line between the reports of several lines each
+			if (blocks && !first) {
+				result.append('\n');
+			}
+			first = false;
+			calculate(trimmed, result);
+			out.append(result);
+		}
+		out.flush();
+		return this.errors;
+	}
+
+	/**
+	 * Calculates one case line and appends its result.
+	 *
+	 * @param line
+	 *            the case line
+	 * @param out
+	 *            where the result is appended
+	 * @return true if the case was calculated
+	 */
+	public boolean calculate(String line, StringBuilder out) {
+		String[] fields = split(line);
+		ChargeTime charge = null;
+		String error = null;
+		if (fields == null) {
+			error = "Expected a start, a stop and a multi-day flag";
+		} else {
+			int multi = ChargeValidator.parseMulti(fields[2]);
+			try {
+				if (multi == ChargeCalculator.INVALID) {
+					error = ChargeError.MULTI_FLAG.getMessage();
+				} else if (this.zone == null) {
+					charge = ChargeCache.shared().get(fields[0], fields[1], multi == ChargeValidator.MULTI_DAY,
+							this.year);
+				} else {
+					charge = new ChargeTime(fields[0], fields[1], multi == ChargeValidator.MULTI_DAY, this.year,
+							this.zone);
+				}
+			} catch (IllegalArgumentException e) {
+				error = e.getMessage();
+			}
+		}
+
+		if (charge != null && this.layout != Layout.LINE) {
+			ChargeReport.append(out, charge, ChargeReport.Format.valueOf(this.layout.name()));
+			if (this.layout == Layout.JSON) {
+				out.append('\n');
+			}
+			return true;
+		}
+		if (charge == null && this.layout == Layout.JSON) {
+			out.append("{\"error\":");
+			ChargeReport.appendJsonString(out, error);
+			out.append("}\n");
+		} else if (charge == null && this.layout != Layout.LINE) {
+			out.append("Error: ").append(error).append('\n');
+		} else {
+			appendLine(out, fields, charge, error);
+		}
+		if (charge == null) {
+			this.errors++;
+		}
+		return charge != null;
+	}
+
+	/*
+	 * Appends one result line. The fields are null if the line could not be
+	 * split.
+	 */
+	private static void appendLine(StringBuilder out, String[] fields, ChargeTime charge, String error) {
+		if (fields != null) {
+			out.append(fields[0]).append(',').append(fields[1]).append(',').append(fields[2]);
+		} else {
+			out.append(",,");
+		}
+		out.append(',');
+		if (charge != null) {
+			long total = charge.getTotalMinutes();
+			out.append(total).append(',').append(ChargeResult.chargeMinutes(total)).append(',')
+					.append(ChargeResult.extraMinutes(total)).append(',');
+		} else {
+			out.append(",,,").append(error);
+		}
+		out.append('\n');
+	}
+
+	/*
+	 * Splits a case line into its start, stop and multi-day flag, or returns
+	 * null if it does not have them.
+	 */
+	private static String[] split(String line) {
+		String[] fields;
+		if (line.indexOf(',') >= 0) {
+			fields = line.split(",", -1);
+		} else if (line.indexOf('\t') >= 0) {
+			fields = line.split("\t", -1);
+		} else {
+			// "MMdd HHmm MMdd HHmm [multi]", so the entries are two words each
+			String[] words = line.split(" +");
+			if (words.length != SPACED_FIELDS && words.length != SPACED_FIELDS + 1) {
+				return null;
+			}
+			fields = new String[] { words[0] + " " + words[1], words[2] + " " + words[3],
+					words.length > SPACED_FIELDS ? words[SPACED_FIELDS] : "" };
+		}
+		if (fields.length == 2) {
+			return new String[] { fields[0].trim(), fields[1].trim(), "" };
+		} else if (fields.length == 3) {
+			return new String[] { fields[0].trim(), fields[1].trim(), fields[2].trim() };
+		}
+		return null;
+	}
+
+	/**
+	 * Main method which calculates one case from the arguments, or every case
+	 * line from standard input. Exits with 1 if any case could not be
+	 * calculated and 2 for bad arguments.
+	 *
+	 * @param args
+	 *            options, then optionally one case. "-y" and a year sets the
+	 *            year of the stop dates (this year if not given); "-z" and a
+	 *            time zone counts the minutes in that zone; "-f" sets the
+	 *            layout of the results (text for one case, line for standard
+	 *            input if not given)
+	 */
+	public static void main(String[] args) {
+		int year = 0;
+		ZoneId zone = null;
+		Layout layout = null;
+		int first = 0;
+		try {
+			while (first < args.length && args[first].startsWith("-") && first + 1 < args.length) {
+				if (args[first].equals("-y")) {
+					year = Integer.parseInt(args[first + 1]);
+				} else if (args[first].equals("-z")) {
+					zone = ZoneId.of(args[first + 1]);
+				} else if (args[first].equals("-f")) {
+					layout = Layout.valueOf(args[first + 1].toUpperCase());
+				} else {
+					break;
+				}
+				first += 2;
+			}
+		} catch (IllegalArgumentException | DateTimeException e) {
+			System.err.println(USAGE);
+			System.exit(EXIT_USAGE);
+		}
+		if (year == 0) {
+			year = LocalDate.now().getYear();
+		}
+
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), BUFFER_SIZE);
+		try {
+			long errors;
+			if (first < args.length) {
+				// one case from the arguments
+				StringBuilder line = new StringBuilder();
+				for (int i = first; i < args.length; i++) {
+					line.append(i > first ? " " : "").append(args[i]);
+				}
+				ChargeCli cli = new ChargeCli(year, zone, layout == null ? Layout.TEXT : layout);
+				StringBuilder result = new StringBuilder();
+				cli.calculate(line.toString().trim(), result);
+				out.append(result);
+				out.flush();
+				errors = cli.errors;
+			} else {
+				// every case from standard input
+				ChargeCli cli = new ChargeCli(year, zone, layout == null ? Layout.LINE : layout);
+				errors = cli.process(new InputStreamReader(System.in, StandardCharsets.UTF_8), out);
+			}
+			if (errors > 0) {
+				System.exit(EXIT_ERROR);
+			}
+		} catch (IOException e) {
+			System.err.println("Could not calculate the charges: " + e.getMessage());
+			System.exit(EXIT_ERROR);
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package live;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import main.ChargeCalculator;
+import main.ChargeResult;
+import main.ChargeTime;
+
+/**
+ * LiveCase is the running charge of one room while bypass is going. The total
+ * minutes, the minutes on the current day and the 999-minute ChargeMaster
+ * split are kept up to date by LiveTimer, one minute at a time: each tick only
+ * adds the minutes since the last tick and checks whether midnight has passed,
+ * so keeping a case current costs the same however long it has run.
+ *
+ * Minutes are counted on the wall clock, the same as ChargeTime. A LiveCase is
+ * updated by LiveTimer and may be read from any thread.
+ *
+ * @author Kimberle McGill
+ * @version 1.2.261018
+ */
+public final class LiveCase {
+
+	/* Room the case is running in */
+	private final String room;
+	/* Start date and time */
+	private final LocalDateTime start;
+	/* Start as minutes since 1970-01-01 00:00 */
+	private final long startMinute;
+	/* Minute the case was last brought up to, guarded by this */
+	private long lastMinute;
+	/* First minute of the day after the last update, guarded by this */
+	private long nextMidnight;
+	/* Total minutes, number of days and minutes today, packed for reading */
+	private volatile long state;
+	/* Minutes in a day */
+	private final static int MIN_PER_DAY = 1440;
+	/* Number of minutes in an hour */
+	private final static int MIN_PER_HOUR = 60;
+	/* Seconds in a minute */
+	private final static int SEC_PER_MIN = 60;
+	/* Bits to shift the total minutes in the state */
+	private final static int TOTAL_SHIFT = 32;
+	/* Bits to shift the number of days in the state */
+	private final static int DAYS_SHIFT = 16;
+	/* Mask of one packed count in the state */
+	private final static int COUNT_MASK = 0xFFFF;
+
+	/**
+	 * Constructs a new LiveCase started at the given date and time.
+	 *
+	 * @param room
+	 *            the room the case is running in
+	 * @param start
+	 *            the date and time bypass started, seconds are ignored
+	 */
+	public LiveCase(String room, LocalDateTime start) {
+		this.room = room;
+		this.start = start.withSecond(0).withNano(0);
+		this.startMinute = toMinute(this.start);
+		this.lastMinute = this.startMinute;
+		this.nextMidnight = (Math.floorDiv(this.startMinute, MIN_PER_DAY) + 1) * MIN_PER_DAY;
+		this.state = pack(0, 1, 0);
+	}
+
+	/**
+	 * Gets the room the case is running in.
+	 *
+	 * @return the room
+	 */
+	public String getRoom() {
+		return this.room;
+	}
+
+	/**
+	 * Gets the date and time bypass started.
+	 *
+	 * @return the start
+	 */
+	public LocalDateTime getStart() {
+		return this.start;
+	}
+
+	/**
+	 * Gets the total minutes so far.
+	 *
+	 * @return the total minutes
+	 */
+	public int getTotalMinutes() {
+		return (int) (this.state >>> TOTAL_SHIFT);
+	}
+
+	/**
+	 * Gets the minutes so far on the current day.
+	 *
+	 * @return the minutes on the current day
+	 */
+	public int getDayMinutes() {
+		return (int) this.state & COUNT_MASK;
+	}
+
+	/**
+	 * Gets the number of calendar days the case has run on, counting the
+	 * current day.
+	 *
+	 * @return the number of days
+	 */
+	public int getNumberOfDays() {
+		return (int) (this.state >>> DAYS_SHIFT) & COUNT_MASK;
+	}
+
+	/**
+	 * Gets the total minutes that go on the ChargeMaster charge, at most 999.
+	 *
+	 * @return the charge minutes
+	 */
+	public int getChargeMinutes() {
+		return (int) ChargeResult.chargeMinutes(getTotalMinutes());
+	}
+
+	/**
+	 * Gets the total minutes over 999 that go on the extra charge.
+	 *
+	 * @return the extra minutes
+	 */
+	public int getExtraMinutes() {
+		return (int) ChargeResult.extraMinutes(getTotalMinutes());
+	}
+
+	/**
+	 * Brings the case up to the given date and time. Only the minutes since the
+	 * last update are added; times before the last update are ignored. Called
+	 * by LiveTimer on every tick.
+	 *
+	 * @param now
+	 *            minutes since 1970-01-01 00:00 on the wall clock
+	 */
+	void advance(long now) {
+		if (now <= this.lastMinute) {
+			return;
+		}
+		long current = this.state;
+		int total = (int) (current >>> TOTAL_SHIFT) + (int) (now - this.lastMinute);
+		int days = (int) (current >>> DAYS_SHIFT) & COUNT_MASK;
+		int today = (int) current & COUNT_MASK;
+
+		// past midnight, today's minutes start again from midnight
+		if (now >= this.nextMidnight) {
+			long midnight = Math.floorDiv(now, MIN_PER_DAY) * MIN_PER_DAY;
+			days += (int) ((midnight - this.nextMidnight) / MIN_PER_DAY) + 1;
+			today = (int) (now - midnight);
+			this.nextMidnight = midnight + MIN_PER_DAY;
+		} else {
+			today += (int) (now - this.lastMinute);
+		}
+		this.lastMinute = now;
+		this.state = pack(total, days, today);
+	}
+
+	/**
+	 * Makes the final charges for the case stopped at the given date and time.
+	 * A case that ran past midnight is a multi-day charge.
+	 *
+	 * @param stop
+	 *            the date and time bypass stopped
+	 * @return the charges
+	 * @throws IllegalArgumentException
+	 *             if the stop is before the start, or a year or more after it
+	 */
+	public ChargeTime toChargeTime(LocalDateTime stop) {
+		if (stop.isBefore(this.start) || !stop.toLocalDate().isBefore(this.start.toLocalDate().plusYears(1))) {
+			throw new IllegalArgumentException("Invalid calculation in date/times");
+		}
+		boolean multi = !stop.toLocalDate().equals(this.start.toLocalDate());
+		return new ChargeTime(format(this.start), format(stop), multi, stop.getYear());
+	}
+
+	/**
+	 * Returns the room and running charges as a single line of text.
+	 *
+	 * @return the room and charges
+	 */
+	@Override
+	public String toString() {
+		long current = this.state;
+		int total = (int) (current >>> TOTAL_SHIFT);
+		int today = (int) current & COUNT_MASK;
+		StringBuilder text = new StringBuilder(this.room.length() + 64);
+		text.append(this.room).append(": ").append(total / MIN_PER_HOUR).append(" hours, ")
+				.append(total % MIN_PER_HOUR).append(" minutes, today ").append(today).append(", charge ")
+				.append(ChargeResult.chargeMinutes(total));
+		if (total > ChargeResult.MAX_CHARGE_MINUTES) {
+			text.append(" + ").append(ChargeResult.extraMinutes(total));
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Gets the minutes since 1970-01-01 00:00 of a wall clock date and time.
+	 *
+	 * @param dateTime
+	 *            the date and time
+	 * @return the minutes since 1970-01-01 00:00
+	 */
+	static long toMinute(LocalDateTime dateTime) {
+		return Math.floorDiv(dateTime.toEpochSecond(ZoneOffset.UTC), SEC_PER_MIN);
+	}
+
+	/*
+	 * Formats a date and time as "MMdd HHmm".
+	 */
+	private static String format(LocalDateTime dateTime) {
+		return ChargeCalculator.format(ChargeCalculator.pack(dateTime.getMonthValue(), dateTime.getDayOfMonth(),
+				dateTime.getHour(), dateTime.getMinute()));
+	}
+
+	/*
+	 * Packs the total minutes, number of days and minutes today into one value.
+	 */
+	private static long pack(int total, int days, int today) {
+		return ((long) total << TOTAL_SHIFT) | ((long) (days & COUNT_MASK) << DAYS_SHIFT) | (today & COUNT_MASK);
+	}
+}
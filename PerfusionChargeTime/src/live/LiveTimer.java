@@ -0,0 +1,217 @@
+package live;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import main.ChargeReport;
+import main.ChargeTime;
+
+/**
+ * LiveTimer keeps the running charges of every room on bypass up to date. One
+ * scheduler thread ticks at the top of every minute and brings each LiveCase
+ * forward by the minutes since its last tick, however many rooms are running;
+ * no thread is started per case. Listeners are told about each case after it
+ * is brought up to date, on the timer thread.
+ *
+ * @author Kimberle McGill
+ * @version 1.2.261018
+ */
+public class LiveTimer {
+
+	/* Running cases by room */
+	private final ConcurrentHashMap<String, LiveCase> cases = new ConcurrentHashMap<String, LiveCase>();
+	/* Told about each case on every tick */
+	private final List<Consumer<LiveCase>> listeners = new CopyOnWriteArrayList<Consumer<LiveCase>>();
+	/* Wall clock of the cases */
+	private final Clock clock;
+	/* Single thread ticking every case */
+	private final ScheduledExecutorService scheduler;
+	/* Milliseconds in a minute */
+	private final static long MILLIS_PER_MIN = 60000;
+
+	/**
+	 * Constructs a new LiveTimer on the system clock and starts ticking.
+	 */
+	public LiveTimer() {
+		this(Clock.systemDefaultZone());
+	}
+
+	/**
+	 * Constructs a new LiveTimer on the given clock and starts ticking.
+	 *
+	 * @param clock
+	 *            the wall clock of the cases
+	 */
+	public LiveTimer(Clock clock) {
+		this.clock = clock;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "live-timer");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		// tick just after the top of each minute
+		long delay = MILLIS_PER_MIN - Math.floorMod(clock.millis(), MILLIS_PER_MIN);
+		this.scheduler.scheduleAtFixedRate(this::tick, delay, MILLIS_PER_MIN, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Starts a case in the given room now.
+	 *
+	 * @param room
+	 *            the room the case is running in
+	 * @return the running case
+	 * @throws IllegalStateException
+	 *             if a case is already running in the room
+	 */
+	public LiveCase start(String room) {
+		return start(room, LocalDateTime.now(this.clock));
+	}
+
+	/**
+	 * Starts a case in the given room that began at the given date and time,
+	 * bringing it up to now.
+	 *
+	 * @param room
+	 *            the room the case is running in
+	 * @param start
+	 *            the date and time bypass started
+	 * @return the running case
+	 * @throws IllegalStateException
+	 *             if a case is already running in the room
+	 */
+	public LiveCase start(String room, LocalDateTime start) {
+		LiveCase live = new LiveCase(room, start);
+		if (this.cases.putIfAbsent(room, live) != null) {
+			throw new IllegalStateException("A case is already running in " + room);
+		}
+		synchronized (live) {
+			live.advance(LiveCase.toMinute(LocalDateTime.now(this.clock)));
+		}
+		return live;
+	}
+
+	/**
+	 * Stops the case in the given room now and makes its final charges.
+	 *
+	 * @param room
+	 *            the room the case is running in
+	 * @return the charges, or null if no case is running in the room
+	 */
+	public ChargeTime stop(String room) {
+		LiveCase live = this.cases.remove(room);
+		return live == null ? null : live.toChargeTime(LocalDateTime.now(this.clock));
+	}
+
+	/**
+	 * Gets the case running in the given room.
+	 *
+	 * @param room
+	 *            the room
+	 * @return the running case, or null if there is none
+	 */
+	public LiveCase get(String room) {
+		return this.cases.get(room);
+	}
+
+	/**
+	 * Gets every running case.
+	 *
+	 * @return the running cases
+	 */
+	public Collection<LiveCase> getCases() {
+		return Collections.unmodifiableCollection(new ArrayList<LiveCase>(this.cases.values()));
+	}
+
+	/**
+	 * Adds a listener told about each case on every tick, on the timer thread.
+	 *
+	 * @param listener
+	 *            the listener
+	 */
+	public void addListener(Consumer<LiveCase> listener) {
+		this.listeners.add(listener);
+	}
+
+	/**
+	 * Removes a listener.
+	 *
+	 * @param listener
+	 *            the listener
+	 */
+	public void removeListener(Consumer<LiveCase> listener) {
+		this.listeners.remove(listener);
+	}
+
+	/**
+	 * Brings every running case up to now. Called by the scheduler every minute.
+	 */
+	public void tick() {
+		long now = LiveCase.toMinute(LocalDateTime.now(this.clock));
+		for (LiveCase live : this.cases.values()) {
+			synchronized (live) {
+				live.advance(now);
+			}
+			for (Consumer<LiveCase> listener : this.listeners) {
+				try {
+					listener.accept(live);
+				} catch (RuntimeException e) {
+					// a failing listener must not stop the timer
+					System.err.println("Could not update a listener of room " + live.getRoom() + ": " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops ticking. Running cases are kept but no longer updated.
+	 */
+	public void shutdown() {
+		this.scheduler.shutdownNow();
+	}
+
+	/**
+	 * Main method which runs cases and prints their running charges every
+	 * minute until stopped.
+	 *
+	 * @param args
+	 *            rooms to start now, or room=yyyy-MM-ddTHH:mm to start a room
+	 *            at an earlier time
+	 */
+	public static void main(String[] args) {
+		if (args.length == 0) {
+			System.err.println("Usage: LiveTimer room[=yyyy-MM-ddTHH:mm] ...");
+			System.exit(1);
+		}
+		LiveTimer timer = new LiveTimer();
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+			LiveCase live = equals < 0 ? timer.start(arg)
+					: timer.start(arg.substring(0, equals), LocalDateTime.parse(arg.substring(equals + 1)));
+			System.out.println(live);
+		}
+		timer.addListener(System.out::println);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			for (LiveCase live : timer.getCases()) {
+				ChargeTime charge = timer.stop(live.getRoom());
+				System.out.println(live.getRoom() + ":");
+				System.out.print(ChargeReport.render(charge, ChargeReport.Format.TEXT));
+			}
+		}));
+		try {
+			Thread.currentThread().join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,288 @@
+package main;
+
+import java.text.DateFormatSymbols;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * CalendarYear is a precomputed table of one calendar year: whether it is a
+ * leap year, its first day as an epoch day (days since 1970-01-01), the days
+ * before each month, and the month, day of the month and "Month d" label of
+ * every day of the year. Turning a month and day into an epoch day, or a day of
+ * a multi-day breakdown back into its label, is then an array lookup.
+ *
+ * Tables are immutable, and the tables for 0 through 10000 are built on first
+ * use and shared, so every year an entry can carry costs the same after its
+ * first case. The labels do not depend on the year and are built once for
+ * all tables.
+ *
+ * @author Kimberle McGill
+ * @version 1.2.261018
+ */
+public final class CalendarYear {
+
+	/* The year */
+	private final int year;
+	/* Is this a leap year? */
+	private final boolean leap;
+	/* Epoch day of January 1 */
+	private final int firstEpochDay;
+	/* Days in the year before the first of each month, plus the year length */
+	private final int[] daysBeforeMonth;
+	/* Month (1-12) of each day of the year */
+	private final byte[] monthOfDay;
+	/* Day of the month of each day of the year */
+	private final byte[] dayOfMonth;
+	/* First year kept in the shared tables */
+	private final static int FIRST_CACHED = 0;
+	/* Number of years kept in the shared tables, through 10000 */
+	private final static int CACHED_YEARS = 10001;
+	/* Shared tables, by year from FIRST_CACHED, built on first use */
+	private final static AtomicReferenceArray<CalendarYear> CACHE = new AtomicReferenceArray<CalendarYear>(
+			CACHED_YEARS);
+	/* Number of months in a year */
+	private final static int MONTHS_IN_YEAR = 12;
+	/* Most days in a month */
+	private final static int MOST_DAYS_IN_MONTH = 31;
+	/* "Month d" label of each day of each month, by month and day less one */
+	private final static String[][] LABELS = buildLabels();
+	/* Month of February */
+	private final static int FEB = 2;
+	/* Days in each month of a common year */
+	private final static int[] DAYS_IN_MONTH = { 31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+	/* Days in a common year */
+	private final static int DAYS_IN_YEAR = 365;
+	/* Days in a 400 year cycle */
+	private final static int DAYS_PER_CYCLE = 146097;
+	/* Days from March 1 to the next January 1 */
+	private final static int DAYS_MARCH_TO_JANUARY = 306;
+	/* Days from 0000-03-01 to 1970-01-01 */
+	private final static int DAYS_0000_TO_1970 = 719468;
+	/* Hundreds divisible by 4 */
+	private final static int HUNDREDS_BY_FOUR = 400;
+	/* Ones divisible by 4 */
+	private final static int ONES_BY_FOUR = 4;
+	/* Hundreds */
+	private final static int HUNDREDS = 100;
+	/* First year of the epoch */
+	private final static int EPOCH_YEAR = 1970;
+
+	/*
+	 * Builds the table for the given year.
+	 */
+	private CalendarYear(int year) {
+		this.year = year;
+		this.leap = isLeapYear(year);
+		this.firstEpochDay = epochDayOfJanuary1(year);
+		this.daysBeforeMonth = new int[MONTHS_IN_YEAR + 1];
+		int length = this.leap ? DAYS_IN_YEAR + 1 : DAYS_IN_YEAR;
+		this.monthOfDay = new byte[length];
+		this.dayOfMonth = new byte[length];
+
+		int dayOfYear = 0;
+		for (int month = 1; month <= MONTHS_IN_YEAR; month++) {
+			this.daysBeforeMonth[month - 1] = dayOfYear;
+			int days = DAYS_IN_MONTH[month - 1] + (month == FEB && this.leap ? 1 : 0);
+			for (int day = 1; day <= days; day++) {
+				this.monthOfDay[dayOfYear] = (byte) month;
+				this.dayOfMonth[dayOfYear] = (byte) day;
+				dayOfYear++;
+			}
+		}
+		this.daysBeforeMonth[MONTHS_IN_YEAR] = dayOfYear;
+	}
+
+	/**
+	 * Gets the table for the given year.
+	 *
+	 * @param year
+	 *            the year
+	 * @return the table of the year
+	 */
+	public static CalendarYear of(int year) {
+		int index = year - FIRST_CACHED;
+		if (index < 0 || index >= CACHE.length()) {
+			return new CalendarYear(year);
+		}
+		CalendarYear table = CACHE.get(index);
+		if (table == null) {
+			CACHE.compareAndSet(index, null, new CalendarYear(year));
+			table = CACHE.get(index);
+		}
+		return table;
+	}
+
+	/**
+	 * Gets the year of the table.
+	 *
+	 * @return the year
+	 */
+	public int getYear() {
+		return this.year;
+	}
+
+	/**
+	 * Is this a leap year?
+	 *
+	 * @return true if the year has 366 days
+	 */
+	public boolean isLeap() {
+		return this.leap;
+	}
+
+	/**
+	 * Gets the number of days in the year.
+	 *
+	 * @return 365 or 366
+	 */
+	public int lengthOfYear() {
+		return this.daysBeforeMonth[MONTHS_IN_YEAR];
+	}
+
+	/**
+	 * Gets the epoch day of January 1.
+	 *
+	 * @return the epoch day of the first day of the year
+	 */
+	public int firstEpochDay() {
+		return this.firstEpochDay;
+	}
+
+	/**
+	 * Gets the number of days in the given month.
+	 *
+	 * @param month
+	 *            month of the year (1-12)
+	 * @return the number of days in the month
+	 */
+	public int lengthOfMonth(int month) {
+		return this.daysBeforeMonth[month] - this.daysBeforeMonth[month - 1];
+	}
+
+	/**
+	 * Is the given day a date of this year?
+	 *
+	 * @param month
+	 *            month of the year
+	 * @param day
+	 *            day of the month
+	 * @return true if the month is 1-12 and the day is within that month
+	 */
+	public boolean isDate(int month, int day) {
+		return month >= 1 && month <= MONTHS_IN_YEAR && day >= 1 && day <= lengthOfMonth(month);
+	}
+
+	/**
+	 * Gets the zero based day of the year of the given date.
+	 *
+	 * @param month
+	 *            month of the year (1-12)
+	 * @param day
+	 *            day of the month
+	 * @return the day of the year, 0 for January 1
+	 */
+	public int dayOfYear(int month, int day) {
+		return this.daysBeforeMonth[month - 1] + day - 1;
+	}
+
+	/**
+	 * Gets the epoch day of the given date.
+	 *
+	 * @param month
+	 *            month of the year (1-12)
+	 * @param day
+	 *            day of the month
+	 * @return the days since 1970-01-01
+	 */
+	public int epochDay(int month, int day) {
+		return this.firstEpochDay + dayOfYear(month, day);
+	}
+
+	/**
+	 * Gets the month of a day of the year.
+	 *
+	 * @param dayOfYear
+	 *            zero based day of the year
+	 * @return the month (1-12)
+	 */
+	public int month(int dayOfYear) {
+		return this.monthOfDay[dayOfYear];
+	}
+
+	/**
+	 * Gets the day of the month of a day of the year.
+	 *
+	 * @param dayOfYear
+	 *            zero based day of the year
+	 * @return the day of the month
+	 */
+	public int dayOfMonth(int dayOfYear) {
+		return this.dayOfMonth[dayOfYear];
+	}
+
+	/**
+	 * Gets the "Month d" label (for example "March 10") of a day of the year.
+	 *
+	 * @param dayOfYear
+	 *            zero based day of the year
+	 * @return the label of the day
+	 */
+	public String label(int dayOfYear) {
+		return LABELS[this.monthOfDay[dayOfYear] - 1][this.dayOfMonth[dayOfYear] - 1];
+	}
+
+	/**
+	 * Gets the year of the given epoch day.
+	 *
+	 * @param epochDay
+	 *            days since 1970-01-01
+	 * @return the year of the day
+	 */
+	public static int yearOf(int epochDay) {
+		// estimate from the average year, then step to the right side of January 1
+		int year = EPOCH_YEAR + (int) Math.floorDiv((long) epochDay * HUNDREDS_BY_FOUR, DAYS_PER_CYCLE);
+		if (epochDayOfJanuary1(year) > epochDay) {
+			year--;
+		} else if (epochDayOfJanuary1(year + 1) <= epochDay) {
+			year++;
+		}
+		return year;
+	}
+
+	/**
+	 * Is the given year a leap year?
+	 *
+	 * @param year
+	 *            the year to check
+	 * @return true if the year has 366 days
+	 */
+	public static boolean isLeapYear(int year) {
+		return (year % HUNDREDS_BY_FOUR == 0) || ((year % ONES_BY_FOUR == 0) && (year % HUNDREDS != 0));
+	}
+
+	/*
+	 * Builds the "Month d" labels of every day a month can have.
+	 */
+	private static String[][] buildLabels() {
+		String[] months = new DateFormatSymbols().getMonths();
+		String[][] labels = new String[MONTHS_IN_YEAR][MOST_DAYS_IN_MONTH];
+		for (int month = 0; month < MONTHS_IN_YEAR; month++) {
+			for (int day = 0; day < MOST_DAYS_IN_MONTH; day++) {
+				labels[month][day] = (months[month] + " " + (day + 1)).intern();
+			}
+		}
+		return labels;
+	}
+
+	/*
+	 * Returns the epoch day of January 1 of the given year.
+	 */
+	private static int epochDayOfJanuary1(int year) {
+		// count years from March so the leap day is the last day of the year
+		int y = year - 1;
+		int era = Math.floorDiv(y, HUNDREDS_BY_FOUR);
+		int yearOfEra = y - era * HUNDREDS_BY_FOUR;
+		int dayOfEra = yearOfEra * DAYS_IN_YEAR + yearOfEra / ONES_BY_FOUR - yearOfEra / HUNDREDS
+				+ DAYS_MARCH_TO_JANUARY;
+		return era * DAYS_PER_CYCLE + dayOfEra - DAYS_0000_TO_1970;
+	}
+}
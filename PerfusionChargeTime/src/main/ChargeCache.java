@@ -0,0 +1,229 @@
+package main;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ChargeCache keeps recently calculated ChargeTimes so the same start and stop
+ * (standard bypass slots, CALCULATE pressed again) are not calculated twice.
+ * Cases are keyed by their packed start, stop, multi-day flag and year, and
+ * held in a fixed number of slots: a new case replaces whatever case was in
+ * its slot, so the cache never grows past its size. Lookups take no locks and
+ * the cache may be shared by any number of threads.
+ *
+ * The shared cache is used by the user interface, the batch calculations and
+ * the charge service. Its size is set with the system property
+ * "chargetime.cache.size" (default 4096, 0 turns it off).
+ *
+ * @author Kimberle McGill
+ * @version 1.2.261018
+ */
+public final class ChargeCache {
+
+	/* Cache shared by every entry point */
+	private final static ChargeCache SHARED = new ChargeCache(
+			Integer.getInteger("chargetime.cache.size", 4096));
+
+	/* Slots holding the cached cases */
+	private final AtomicReferenceArray<Slot> slots;
+	/* Mask turning a hash into a slot index */
+	private final int mask;
+	/* Number of lookups answered from the cache */
+	private final LongAdder hits = new LongAdder();
+	/* Number of lookups that had to calculate */
+	private final LongAdder misses = new LongAdder();
+	/* Is the cache used? */
+	private volatile boolean enabled;
+	/* Bit marking a multi-day charge in a key */
+	private final static long MULTI_BIT = 1L << 31;
+	/* Bits to shift the start entry in a key */
+	private final static int START_SHIFT = 32;
+
+	/**
+	 * Constructs a new ChargeCache holding at most the given number of cases,
+	 * rounded up to a power of two. A size of 0 or less makes a disabled cache.
+	 *
+	 * @param size
+	 *            the most cases held
+	 */
+	public ChargeCache(int size) {
+		int capacity = Integer.highestOneBit(Math.max(size, 1));
+		if (capacity < size) {
+			capacity <<= 1;
+		}
+		this.slots = new AtomicReferenceArray<Slot>(capacity);
+		this.mask = capacity - 1;
+		this.enabled = size > 0;
+	}
+
+	/**
+	 * Gets the cache shared by the user interface, batch and service.
+	 *
+	 * @return the shared cache
+	 */
+	public static ChargeCache shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Gets the charges for the given start and stop, calculating them if they
+	 * are not cached.
+	 *
+	 * @param start
+	 *            the starting date and time in the format of "MMdd HHmm"
+	 * @param stop
+	 *            the stopping date and time in the format of "MMdd HHmm"
+	 * @param multi
+	 *            whether this is a multi-day charge
+	 * @param year
+	 *            the year of the stop date
+	 * @return the charges
+	 * @throws IllegalArgumentException
+	 *             if the start or stop is not in the proper format
+	 */
+	public ChargeTime get(String start, String stop, boolean multi, int year) {
+		int startEntry = ChargeCalculator.parseEntry(start);
+		int stopEntry = ChargeCalculator.parseEntry(stop);
+		if (!this.enabled || startEntry == ChargeCalculator.INVALID || stopEntry == ChargeCalculator.INVALID) {
+			return new ChargeTime(start, stop, multi, year);
+		}
+		return lookUp(startEntry, stopEntry, multi, year, start, stop);
+	}
+
+	/**
+	 * Gets the charges for the given packed start and stop (see
+	 * ChargeCalculator), calculating them if they are not cached. Nothing is
+	 * created when the charges are cached.
+	 *
+	 * @param start
+	 *            the packed start date and time
+	 * @param stop
+	 *            the packed stop date and time
+	 * @param multi
+	 *            whether this is a multi-day charge
+	 * @param year
+	 *            the year of the stop date
+	 * @return the charges
+	 * @throws IllegalArgumentException
+	 *             if the start or stop is not a date of its year
+	 */
+	public ChargeTime get(int start, int stop, boolean multi, int year) {
+		if (!this.enabled) {
+			return new ChargeTime(ChargeCalculator.format(start), ChargeCalculator.format(stop), multi, year);
+		}
+		return lookUp(start, stop, multi, year, null, null);
+	}
+
+	/**
+	 * Turns the cache on or off. A cache that is off calculates every lookup and
+	 * does not count it.
+	 *
+	 * @param enabled
+	 *            true to use the cache
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Is the cache being used?
+	 *
+	 * @return true if the cache is on
+	 */
+	public boolean isEnabled() {
+		return this.enabled;
+	}
+
+	/**
+	 * Gets the number of lookups answered from the cache.
+	 *
+	 * @return the number of hits
+	 */
+	public long getHits() {
+		return this.hits.sum();
+	}
+
+	/**
+	 * Gets the number of lookups that had to calculate the charges.
+	 *
+	 * @return the number of misses
+	 */
+	public long getMisses() {
+		return this.misses.sum();
+	}
+
+	/**
+	 * Removes every cached case and resets the counts.
+	 */
+	public void clear() {
+		for (int i = 0; i < this.slots.length(); i++) {
+			this.slots.set(i, null);
+		}
+		this.hits.reset();
+		this.misses.reset();
+	}
+
+	/**
+	 * Returns the size and counts of the cache as a single line of text.
+	 *
+	 * @return the cache statistics
+	 */
+	@Override
+	public String toString() {
+		long hitCount = getHits();
+		long total = hitCount + getMisses();
+		return String.format("cache %s, %d slots, %d hits, %d misses (%.1f%% hits)", this.enabled ? "on" : "off",
+				this.slots.length(), hitCount, total - hitCount, total == 0 ? 0.0 : 100.0 * hitCount / total);
+	}
+
+	/*
+	 * Looks the case up, calculating and storing it on a miss. The text of the
+	 * entries is made from the packed entries when not given.
+	 */
+	private ChargeTime lookUp(int start, int stop, boolean multi, int year, String startText, String stopText) {
+		long key = ((long) start << START_SHIFT) | (multi ? MULTI_BIT : 0) | stop;
+		int index = hash(key, year) & this.mask;
+		Slot slot = this.slots.get(index);
+		if (slot != null && slot.key == key && slot.year == year) {
+			this.hits.increment();
+			ChargeMetrics.shared().countCase(slot.charge);
+			return slot.charge;
+		}
+
+		this.misses.increment();
+		ChargeTime charge = new ChargeTime(startText != null ? startText : ChargeCalculator.format(start),
+				stopText != null ? stopText : ChargeCalculator.format(stop), multi, year);
+		this.slots.set(index, new Slot(key, year, charge));
+		return charge;
+	}
+
+	/*
+	 * Spreads the bits of the key and year over an int.
+	 */
+	private static int hash(long key, int year) {
+		long h = (key ^ ((long) year << 40)) * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/*
+	 * One cached case.
+	 */
+	private static final class Slot {
+
+		/* Packed start, multi-day flag and stop */
+		final long key;
+		/* Year of the stop date */
+		final int year;
+		/* Calculated charges */
+		final ChargeTime charge;
+
+		/*
+		 * Constructs a slot for a calculated case.
+		 */
+		Slot(long key, int year, ChargeTime charge) {
+			this.key = key;
+			this.year = year;
+			this.charge = charge;
+		}
+	}
+}
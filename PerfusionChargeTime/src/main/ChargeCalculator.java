@@ -0,0 +1,580 @@
+package main;
+
+import java.nio.ByteBuffer;
+
+/**
+ * ChargeCalculator holds the core charge time arithmetic. Entries in the form
+ * of "MMdd HHmm" are read straight from their characters into a packed int,
+ * and the total minutes, the number of days and the minutes on the first and
+ * last day are worked out with integer arithmetic on epoch days (looked up in
+ * a CalendarYear table) into a caller supplied int array, so no objects are
+ * created per calculation and a run of weeks costs the same as a run of
+ * minutes. Every day between the first and last day is a whole day, so the
+ * per-day breakdown is never stored.
+ *
+ * Entries may also carry their years, in the form of "yyyyMMdd HHmm", and are
+ * then read into minutes since 1970-01-01 00:00 on the wall clock. A charge
+ * between two such entries needs no year rules and may be of any length,
+ * across any number of year and leap year boundaries, for the same cost.
+ *
+ * Minutes are counted on the wall clock unless a ZoneOffsets table is given,
+ * in which case the hour the clocks go forward is not charged and the hour
+ * they go back is charged twice, and the days those happen on are 1380 and
+ * 1500 minutes long.
+ *
+ * @author Kimberle McGill
+ * @version 1.2.261018
+ */
+public final class ChargeCalculator {
+
+	/** Index of the total number of minutes in a result */
+	public static final int TOTAL_MINUTES = 0;
+	/** Index of the number of minutes on the first day in a result */
+	public static final int FIRST_DAY_MINUTES = 1;
+	/** Index of the number of minutes on the last day in a result */
+	public static final int LAST_DAY_MINUTES = 2;
+	/** Index of the number of calendar days charged in a result */
+	public static final int NUMBER_OF_DAYS = 3;
+	/** Index of the epoch day (days since 1970-01-01) of the start in a result */
+	public static final int START_EPOCH_DAY = 4;
+	/** Index of the year of the start in a result */
+	public static final int START_YEAR = 5;
+	/** Index of the UTC offset at the stop less the offset at the start, in minutes, in a result */
+	public static final int OFFSET_CHANGE = 6;
+	/** Length of a result array */
+	public static final int RESULT_SIZE = 7;
+	/** Value returned for an entry that is not in the form of "MMdd HHmm" */
+	public static final int INVALID = -1;
+	/** Value returned for an entry that is not in the form of "yyyyMMdd HHmm" */
+	public static final long INVALID_MINUTE = Long.MIN_VALUE;
+
+	/* Number of minutes in an hour */
+	private final static int MIN_PER_HOUR = 60;
+	/* Number of minutes in a day */
+	private final static int MIN_PER_DAY = 24 * MIN_PER_HOUR;
+	/* Length of proper entry */
+	private final static int PROPER_ENTRY = 9;
+	/* Length of proper entry with its year */
+	private final static int PROPER_DATE_TIME = 13;
+	/* Number of digits of the year in an entry with its year */
+	private final static int YEAR_DIGITS = 4;
+	/* Number of years in a century */
+	private final static int CENTURY = 100;
+	/* Number of hours in a day */
+	private final static int HOURS_PER_DAY = 24;
+	/* Index of the start of the month digits */
+	private final static int MONTH_START = 0;
+	/* Index of the start of the day digits */
+	private final static int DAY_START = 2;
+	/* Index of the start of the hour digits */
+	private final static int HOUR_START = 5;
+	/* Index of the start of the minute digits */
+	private final static int MINUTE_START = 7;
+	/* Bits to shift for each packed field */
+	private final static int FIELD_BITS = 8;
+	/* Mask for a single packed field */
+	private final static int FIELD_MASK = 0xFF;
+
+	/*
+	 * All static, never constructed.
+	 */
+	private ChargeCalculator() {
+	}
+
+	/**
+	 * Reads an entry in the form of "MMdd HHmm" into a packed int holding the
+	 * month, day, hour and minute. The character between the date and the time
+	 * is not checked, and nor are the ranges of the fields (see
+	 * ChargeValidator).
+	 *
+	 * @param entry
+	 *            the date and time in the form of "MMdd HHmm"
+	 * @return the packed entry, or INVALID if the entry is not properly formatted
+	 */
+	public static int parseEntry(CharSequence entry) {
+		if (entry == null || entry.length() != PROPER_ENTRY) {
+			return INVALID;
+		}
+		int month = twoDigits(entry.charAt(MONTH_START), entry.charAt(MONTH_START + 1));
+		int day = twoDigits(entry.charAt(DAY_START), entry.charAt(DAY_START + 1));
+		int hour = twoDigits(entry.charAt(HOUR_START), entry.charAt(HOUR_START + 1));
+		int minute = twoDigits(entry.charAt(MINUTE_START), entry.charAt(MINUTE_START + 1));
+		if ((month | day | hour | minute) < 0) {
+			return INVALID;
+		}
+		return pack(month, day, hour, minute);
+	}
+
+	/**
+	 * Reads an entry in the form of "MMdd HHmm" from ASCII bytes into a packed
+	 * int, without making a String. The buffer's position is not changed.
+	 *
+	 * @param bytes
+	 *            the buffer holding the entry
+	 * @param index
+	 *            index of the first byte of the entry
+	 * @param length
+	 *            number of bytes in the entry
+	 * @return the packed entry, or INVALID if the entry is not properly formatted
+	 */
+	public static int parseEntry(ByteBuffer bytes, int index, int length) {
+		if (length != PROPER_ENTRY) {
+			return INVALID;
+		}
+		int month = twoDigits(bytes.get(index + MONTH_START), bytes.get(index + MONTH_START + 1));
+		int day = twoDigits(bytes.get(index + DAY_START), bytes.get(index + DAY_START + 1));
+		int hour = twoDigits(bytes.get(index + HOUR_START), bytes.get(index + HOUR_START + 1));
+		int minute = twoDigits(bytes.get(index + MINUTE_START), bytes.get(index + MINUTE_START + 1));
+		if ((month | day | hour | minute) < 0) {
+			return INVALID;
+		}
+		return pack(month, day, hour, minute);
+	}
+
+	/**
+	 * Reads an entry in the form of "yyyyMMdd HHmm" into minutes since
+	 * 1970-01-01 00:00 on the wall clock. The character between the date and the
+	 * time is not checked.
+	 *
+	 * @param entry
+	 *            the date and time in the form of "yyyyMMdd HHmm"
+	 * @return the epoch minute, or INVALID_MINUTE if the entry is not properly
+	 *         formatted or is not a date and time
+	 */
+	public static long parseDateTime(CharSequence entry) {
+		if (entry == null || entry.length() != PROPER_DATE_TIME) {
+			return INVALID_MINUTE;
+		}
+		int century = twoDigits(entry.charAt(0), entry.charAt(1));
+		int yearOfCentury = twoDigits(entry.charAt(YEAR_DIGITS / 2), entry.charAt(YEAR_DIGITS / 2 + 1));
+		int month = twoDigits(entry.charAt(YEAR_DIGITS + MONTH_START), entry.charAt(YEAR_DIGITS + MONTH_START + 1));
+		int day = twoDigits(entry.charAt(YEAR_DIGITS + DAY_START), entry.charAt(YEAR_DIGITS + DAY_START + 1));
+		int hour = twoDigits(entry.charAt(YEAR_DIGITS + HOUR_START), entry.charAt(YEAR_DIGITS + HOUR_START + 1));
+		int minute = twoDigits(entry.charAt(YEAR_DIGITS + MINUTE_START),
+				entry.charAt(YEAR_DIGITS + MINUTE_START + 1));
+		return epochMinute(century, yearOfCentury, month, day, hour, minute);
+	}
+
+	/**
+	 * Reads an entry in the form of "yyyyMMdd HHmm" from ASCII bytes into
+	 * minutes since 1970-01-01 00:00 on the wall clock, without making a String.
+	 * The buffer's position is not changed.
+	 *
+	 * @param bytes
+	 *            the buffer holding the entry
+	 * @param index
+	 *            index of the first byte of the entry
+	 * @param length
+	 *            number of bytes in the entry
+	 * @return the epoch minute, or INVALID_MINUTE if the entry is not properly
+	 *         formatted or is not a date and time
+	 */
+	public static long parseDateTime(ByteBuffer bytes, int index, int length) {
+		if (length != PROPER_DATE_TIME) {
+			return INVALID_MINUTE;
+		}
+		int century = twoDigits(bytes.get(index), bytes.get(index + 1));
+		int yearOfCentury = twoDigits(bytes.get(index + YEAR_DIGITS / 2), bytes.get(index + YEAR_DIGITS / 2 + 1));
+		int at = index + YEAR_DIGITS;
+		int month = twoDigits(bytes.get(at + MONTH_START), bytes.get(at + MONTH_START + 1));
+		int day = twoDigits(bytes.get(at + DAY_START), bytes.get(at + DAY_START + 1));
+		int hour = twoDigits(bytes.get(at + HOUR_START), bytes.get(at + HOUR_START + 1));
+		int minute = twoDigits(bytes.get(at + MINUTE_START), bytes.get(at + MINUTE_START + 1));
+		return epochMinute(century, yearOfCentury, month, day, hour, minute);
+	}
+
+	/**
+	 * Formats minutes since 1970-01-01 00:00 on the wall clock into the form of
+	 * "yyyyMMdd HHmm".
+	 *
+	 * @param epochMinute
+	 *            the epoch minute, in the years 0 to 9999
+	 * @return the entry as text
+	 */
+	public static String formatDateTime(long epochMinute) {
+		int epochDay = (int) Math.floorDiv(epochMinute, MIN_PER_DAY);
+		int minuteOfDay = (int) Math.floorMod(epochMinute, MIN_PER_DAY);
+		CalendarYear calendar = CalendarYear.of(CalendarYear.yearOf(epochDay));
+		int dayOfYear = epochDay - calendar.firstEpochDay();
+		char[] text = new char[PROPER_DATE_TIME];
+		putTwoDigits(text, 0, calendar.getYear() / CENTURY);
+		putTwoDigits(text, YEAR_DIGITS / 2, calendar.getYear() % CENTURY);
+		putTwoDigits(text, YEAR_DIGITS + MONTH_START, calendar.month(dayOfYear));
+		putTwoDigits(text, YEAR_DIGITS + DAY_START, calendar.dayOfMonth(dayOfYear));
+		text[YEAR_DIGITS + DAY_START + 2] = ' ';
+		putTwoDigits(text, YEAR_DIGITS + HOUR_START, minuteOfDay / MIN_PER_HOUR);
+		putTwoDigits(text, YEAR_DIGITS + MINUTE_START, minuteOfDay % MIN_PER_HOUR);
+		return new String(text);
+	}
+
+	/**
+	 * Formats a packed entry back into the form of "MMdd HHmm".
+	 *
+	 * @param entry
+	 *            the packed entry
+	 * @return the entry as text
+	 */
+	public static String format(int entry) {
+		char[] text = new char[PROPER_ENTRY];
+		putTwoDigits(text, MONTH_START, month(entry));
+		putTwoDigits(text, DAY_START, day(entry));
+		text[DAY_START + 2] = ' ';
+		putTwoDigits(text, HOUR_START, hour(entry));
+		putTwoDigits(text, MINUTE_START, minute(entry));
+		return new String(text);
+	}
+
+	/**
+	 * Packs the given month, day, hour and minute into a single int.
+	 *
+	 * @param month
+	 *            month of the year (1-12)
+	 * @param day
+	 *            day of the month
+	 * @param hour
+	 *            hour of the day
+	 * @param minute
+	 *            minute of the hour
+	 * @return the packed entry
+	 */
+	public static int pack(int month, int day, int hour, int minute) {
+		return (((((month << FIELD_BITS) | day) << FIELD_BITS) | hour) << FIELD_BITS) | minute;
+	}
+
+	/**
+	 * Gets the month of a packed entry.
+	 *
+	 * @param entry
+	 *            the packed entry
+	 * @return the month (1-12)
+	 */
+	public static int month(int entry) {
+		return entry >>> (3 * FIELD_BITS);
+	}
+
+	/**
+	 * Gets the day of the month of a packed entry.
+	 *
+	 * @param entry
+	 *            the packed entry
+	 * @return the day of the month
+	 */
+	public static int day(int entry) {
+		return (entry >>> (2 * FIELD_BITS)) & FIELD_MASK;
+	}
+
+	/**
+	 * Gets the hour of a packed entry.
+	 *
+	 * @param entry
+	 *            the packed entry
+	 * @return the hour of the day
+	 */
+	public static int hour(int entry) {
+		return (entry >>> FIELD_BITS) & FIELD_MASK;
+	}
+
+	/**
+	 * Gets the minute of a packed entry.
+	 *
+	 * @param entry
+	 *            the packed entry
+	 * @return the minute of the hour
+	 */
+	public static int minute(int entry) {
+		return entry & FIELD_MASK;
+	}
+
+	/**
+	 * Gets the minutes since midnight of a packed entry.
+	 *
+	 * @param entry
+	 *            the packed entry
+	 * @return the minute of the day
+	 */
+	public static int minuteOfDay(int entry) {
+		return hour(entry) * MIN_PER_HOUR + minute(entry);
+	}
+
+	/**
+	 * Calculates the charge minutes between two packed entries into the given
+	 * result array, using the same rules as ChargeTime: a multi-day charge whose
+	 * start month is after its stop month (ex., dec 28 - jan 10, or nov 20 - feb
+	 * 3) started in the year before the stop year. A multi-day charge that
+	 * stops before it starts within the same month is refused rather than
+	 * taken to last most of a year. The number of days counts both the start
+	 * and stop dates, and is 0 if the stop date is before the start date.
+	 *
+	 * @param start
+	 *            the packed start date and time
+	 * @param stop
+	 *            the packed stop date and time
+	 * @param multi
+	 *            whether this is a multi-day charge
+	 * @param year
+	 *            the year of the stop date
+	 * @param result
+	 *            array of at least RESULT_SIZE ints that receives the result
+	 * @throws IllegalArgumentException
+	 *             if either entry is not a date of its year, or a multi-day
+	 *             charge stops before it starts within the same month
+	 */
+	public static void calculate(int start, int stop, boolean multi, int year, int[] result) {
+		int startMonth = month(start);
+		int startDate = day(start);
+		int stopMonth = month(stop);
+		int stopDate = day(stop);
+
+		// if multi days and crosses to a new year
+		CalendarYear stopYear = CalendarYear.of(year);
+		CalendarYear startYear = stopYear;
+		if (multi && startMonth > stopMonth) {
+			startYear = CalendarYear.of(year - 1);
+		} else if (multi && startMonth == stopMonth && start > stop) {
+			throw new IllegalArgumentException(ChargeError.ORDER.getMessage());
+		}
+		if (!startYear.isDate(startMonth, startDate) || !stopYear.isDate(stopMonth, stopDate)) {
+			throw new IllegalArgumentException("Invalid calculation in date/times");
+		}
+
+		int startDay = startYear.epochDay(startMonth, startDate);
+		int daysBetween = stopYear.epochDay(stopMonth, stopDate) - startDay;
+		int startMinute = minuteOfDay(start);
+		int stopMinute = minuteOfDay(stop);
+		result[TOTAL_MINUTES] = daysBetween * MIN_PER_DAY + stopMinute - startMinute;
+		result[FIRST_DAY_MINUTES] = MIN_PER_DAY - startMinute;
+		result[LAST_DAY_MINUTES] = stopMinute;
+		result[NUMBER_OF_DAYS] = Math.max(daysBetween + 1, 0);
+		result[START_EPOCH_DAY] = startDay;
+		result[START_YEAR] = startYear.getYear();
+		result[OFFSET_CHANGE] = 0;
+	}
+
+	/**
+	 * Calculates the charge minutes between two wall clock minutes into the
+	 * given result array. The entries carry their own years, so the charge may
+	 * be of any length and no year rules are applied. The number of days counts
+	 * both the start and stop dates, and is 0 if the stop is before the start
+	 * date.
+	 *
+	 * @param startMinute
+	 *            the start in minutes since 1970-01-01 00:00
+	 * @param stopMinute
+	 *            the stop in minutes since 1970-01-01 00:00
+	 * @param result
+	 *            array of at least RESULT_SIZE ints that receives the result
+	 * @throws IllegalArgumentException
+	 *             if the charge is too long to count in minutes
+	 */
+	public static void calculate(long startMinute, long stopMinute, int[] result) {
+		long total = stopMinute - startMinute;
+		if (total > Integer.MAX_VALUE || total < Integer.MIN_VALUE || startMinute == INVALID_MINUTE
+				|| stopMinute == INVALID_MINUTE) {
+			throw new IllegalArgumentException("Invalid calculation in date/times");
+		}
+		int startDay = (int) Math.floorDiv(startMinute, MIN_PER_DAY);
+		int stopDay = (int) Math.floorDiv(stopMinute, MIN_PER_DAY);
+		result[TOTAL_MINUTES] = (int) total;
+		result[FIRST_DAY_MINUTES] = MIN_PER_DAY - (int) Math.floorMod(startMinute, MIN_PER_DAY);
+		result[LAST_DAY_MINUTES] = (int) Math.floorMod(stopMinute, MIN_PER_DAY);
+		result[NUMBER_OF_DAYS] = Math.max(stopDay - startDay + 1, 0);
+		result[START_EPOCH_DAY] = startDay;
+		result[START_YEAR] = CalendarYear.yearOf(startDay);
+		result[OFFSET_CHANGE] = 0;
+	}
+
+	/**
+	 * Calculates the charge minutes between two wall clock minutes into the
+	 * given result array, as calculate does, counting the minutes that actually
+	 * pass in the given time zone.
+	 *
+	 * @param startMinute
+	 *            the start in minutes since 1970-01-01 00:00
+	 * @param stopMinute
+	 *            the stop in minutes since 1970-01-01 00:00
+	 * @param zone
+	 *            offsets of the time zone, or null for the wall clock
+	 * @param result
+	 *            array of at least RESULT_SIZE ints that receives the result
+	 * @throws IllegalArgumentException
+	 *             if the charge is too long to count in minutes
+	 */
+	public static void calculate(long startMinute, long stopMinute, ZoneOffsets zone, int[] result) {
+		calculate(startMinute, stopMinute, result);
+		applyZone(zone, result);
+	}
+
+	/**
+	 * Calculates the charge minutes between two packed entries into the given
+	 * result array, as calculate does, counting the minutes that actually pass
+	 * in the given time zone.
+	 *
+	 * @param start
+	 *            the packed start date and time
+	 * @param stop
+	 *            the packed stop date and time
+	 * @param multi
+	 *            whether this is a multi-day charge
+	 * @param year
+	 *            the year of the stop date
+	 * @param zone
+	 *            offsets of the time zone, or null for the wall clock
+	 * @param result
+	 *            array of at least RESULT_SIZE ints that receives the result
+	 * @throws IllegalArgumentException
+	 *             if either entry is not a date of its year
+	 */
+	public static void calculate(int start, int stop, boolean multi, int year, ZoneOffsets zone, int[] result) {
+		calculate(start, stop, multi, year, result);
+		applyZone(zone, result);
+	}
+
+	/**
+	 * Gets the minutes charged on one day of a calculated result. The first day
+	 * runs from the start time to midnight, the last day from midnight to the
+	 * stop time and every day in between is a whole day. A charge on a single
+	 * day is all on that day.
+	 *
+	 * @param result
+	 *            a result filled in by calculate
+	 * @param dayIndex
+	 *            zero based index of the day, less than the number of days
+	 * @return the minutes charged on that day
+	 */
+	public static int minutesOnDay(int[] result, int dayIndex) {
+		if (result[NUMBER_OF_DAYS] == 1) {
+			return result[TOTAL_MINUTES];
+		} else if (dayIndex == 0) {
+			return result[FIRST_DAY_MINUTES];
+		} else if (dayIndex == result[NUMBER_OF_DAYS] - 1) {
+			return result[LAST_DAY_MINUTES];
+		}
+		return MIN_PER_DAY;
+	}
+
+	/**
+	 * Gets the minutes charged on one day of a result calculated in a time zone.
+	 * The days the clocks change on are an hour shorter or longer than the wall
+	 * clock shows.
+	 *
+	 * @param result
+	 *            a result filled in by calculate
+	 * @param dayIndex
+	 *            zero based index of the day, less than the number of days
+	 * @param zone
+	 *            offsets of the time zone the result was calculated in, or null
+	 *            for the wall clock
+	 * @return the minutes charged on that day
+	 */
+	public static int minutesOnDay(int[] result, int dayIndex, ZoneOffsets zone) {
+		if (zone == null || result[NUMBER_OF_DAYS] == 1) {
+			return minutesOnDay(result, dayIndex);
+		}
+		long startWall = startWallMinute(result);
+		long stopWall = startWall + result[TOTAL_MINUTES] + result[OFFSET_CHANGE];
+		long midnight = (long) (result[START_EPOCH_DAY] + dayIndex) * MIN_PER_DAY;
+		return (int) zone.minutesBetween(Math.max(startWall, midnight), Math.min(stopWall, midnight + MIN_PER_DAY));
+	}
+
+	/**
+	 * Gets the start of a calculated result as minutes since 1970-01-01 00:00 on
+	 * the wall clock.
+	 *
+	 * @param result
+	 *            a result filled in by calculate
+	 * @return the start in epoch minutes
+	 */
+	public static long startWallMinute(int[] result) {
+		return (long) result[START_EPOCH_DAY] * MIN_PER_DAY + MIN_PER_DAY - result[FIRST_DAY_MINUTES];
+	}
+
+	/**
+	 * Gets the number of days since 1970-01-01 of the given date.
+	 *
+	 * @param year
+	 *            the year
+	 * @param month
+	 *            month of the year (1-12)
+	 * @param day
+	 *            day of the month
+	 * @return the epoch day
+	 */
+	public static int epochDay(int year, int month, int day) {
+		return CalendarYear.of(year).epochDay(month, day);
+	}
+
+	/**
+	 * Is the given day a date of the given month and year?
+	 *
+	 * @param year
+	 *            the year
+	 * @param month
+	 *            month of the year
+	 * @param day
+	 *            day of the month
+	 * @return true if the month is 1-12 and the day is within that month
+	 */
+	public static boolean isDate(int year, int month, int day) {
+		return CalendarYear.of(year).isDate(month, day);
+	}
+
+	/**
+	 * Is the given year a leap year?
+	 *
+	 * @param year
+	 *            the year to check
+	 * @return true if the year has 366 days
+	 */
+	public static boolean isLeapYear(int year) {
+		return CalendarYear.isLeapYear(year);
+	}
+
+	/*
+	 * Takes the change of UTC offset between the start and stop of a wall clock
+	 * result off its total.
+	 */
+	private static void applyZone(ZoneOffsets zone, int[] result) {
+		if (zone != null) {
+			long startWall = startWallMinute(result);
+			int change = zone.offsetAt(startWall + result[TOTAL_MINUTES]) - zone.offsetAt(startWall);
+			result[TOTAL_MINUTES] -= change;
+			result[OFFSET_CHANGE] = change;
+		}
+	}
+
+	/*
+	 * Returns the epoch minute of a date and time read as two digit fields, or
+	 * INVALID_MINUTE if any field was not digits or is out of range.
+	 */
+	private static long epochMinute(int century, int yearOfCentury, int month, int day, int hour, int minute) {
+		if ((century | yearOfCentury | month | day | hour | minute) < 0 || hour >= HOURS_PER_DAY
+				|| minute >= MIN_PER_HOUR) {
+			return INVALID_MINUTE;
+		}
+		CalendarYear calendar = CalendarYear.of(century * CENTURY + yearOfCentury);
+		if (!calendar.isDate(month, day)) {
+			return INVALID_MINUTE;
+		}
+		return (long) calendar.epochDay(month, day) * MIN_PER_DAY + hour * MIN_PER_HOUR + minute;
+	}
+
+	/*
+	 * Writes a number below 100 as two decimal digits.
+	 */
+	private static void putTwoDigits(char[] text, int index, int value) {
+		text[index] = (char) ('0' + value / 10);
+		text[index + 1] = (char) ('0' + value % 10);
+	}
+
+	/*
+	 * Reads two decimal digit characters, or returns INVALID.
+	 */
+	static int twoDigits(int tensChar, int onesChar) {
+		int tens = tensChar - '0';
+		int ones = onesChar - '0';
+		if (tens < 0 || tens > 9 || ones < 0 || ones > 9) {
+			return INVALID;
+		}
+		return tens * 10 + ones;
+	}
+}
@@ -0,0 +1,50 @@
+package main;
+
+/**
+ * ChargeError names why a case could not be calculated. ChargeValidator
+ * returns one of these, rather than throwing, so a batch of bad rows can be
+ * counted by kind without an exception being made for each row.
+ *
+ * @author Kimberle McGill
+ * @version 1.2.261018
+ */
+public enum ChargeError {
+
+	/** A case row without the expected number of fields */
+	FIELDS("Wrong number of fields"),
+	/** An entry that is not in the form of "MMdd HHmm" or "yyyyMMdd HHmm" */
+	FORMAT("Invalid entry! Entries must be in the form of MMdd or HHmm"),
+	/** A month that is not 01 to 12 */
+	MONTH("Invalid month! Months must be 01 to 12"),
+	/** A day that is not a day of its month in its year */
+	DAY("Invalid day! Days must be within the month"),
+	/** A multi-day charge that stops before it starts within the same month */
+	ORDER("Invalid dates! A multi-day charge must stop after it starts"),
+	/** An hour that is not 00 to 23 */
+	HOUR("Invalid hour! Hours must be 00 to 23"),
+	/** A minute that is not 00 to 59 */
+	MINUTE("Invalid minute! Minutes must be 00 to 59"),
+	/** A multi-day flag that is not true or false */
+	MULTI_FLAG("Invalid multi-day flag! Must be true or false"),
+	/** A charge too long to count in minutes */
+	SPAN("Invalid calculation in date/times");
+
+	/* Message shown for the error */
+	private final String message;
+
+	/*
+	 * Constructs an error with its message.
+	 */
+	private ChargeError(String message) {
+		this.message = message;
+	}
+
+	/**
+	 * Gets the message shown for the error.
+	 *
+	 * @return the message
+	 */
+	public String getMessage() {
+		return this.message;
+	}
+}
@@ -0,0 +1,362 @@
+package main;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * ChargeMetrics records how long reading, calculating and formatting charges
+ * take, and counts the cases calculated (single-day, multi-day and
+ * year-crossing) and the entries and dates turned away. Times go into
+ * LatencyHistograms and counts into LongAdders, so recording takes no locks.
+ * When the metrics are off, the calculation only checks one flag.
+ *
+ * A case is counted wherever its charges are made or found: when a ChargeTime
+ * is calculated, when the ChargeCache answers from a cached case and when a
+ * batch row with years is calculated straight into a result array. Only the
+ * calculated cases are timed.
+ *
+ * The shared metrics are turned on with the system property
+ * "chargetime.metrics" (or setEnabled), and are then registered with the
+ * platform MBean server as "chargetime:type=ChargeMetrics". dump gives the
+ * same metrics as plain text.
+ *
+ * @author Kimberle McGill
+ * @version 1.2.261018
+ */
+public final class ChargeMetrics implements ChargeMetricsMBean {
+
+	/* Metrics shared by every entry point */
+	private final static ChargeMetrics SHARED = new ChargeMetrics(Boolean.getBoolean("chargetime.metrics"));
+
+	/* Time to read the entries of a case */
+	private final LatencyHistogram parse = new LatencyHistogram();
+	/* Time to calculate the minutes of a case */
+	private final LatencyHistogram calculate = new LatencyHistogram();
+	/* Time to format a report */
+	private final LatencyHistogram format = new LatencyHistogram();
+	/* Number of single-day cases */
+	private final LongAdder singleDay = new LongAdder();
+	/* Number of multi-day cases within one year */
+	private final LongAdder multiDay = new LongAdder();
+	/* Number of multi-day cases from one year into the next */
+	private final LongAdder yearCrossing = new LongAdder();
+	/* Number of entries not in the form of "MMdd HHmm" */
+	private final LongAdder invalidEntries = new LongAdder();
+	/* Number of cases with dates that are not dates of their year */
+	private final LongAdder invalidDates = new LongAdder();
+	/* Are the metrics recorded? */
+	private volatile boolean enabled;
+	/* Has the shared metrics bean been registered? */
+	private volatile boolean registered;
+	/* Name of the shared metrics bean */
+	private final static String MBEAN_NAME = "chargetime:type=ChargeMetrics";
+	/* Nanoseconds in a microsecond */
+	private final static double NANOS_PER_MICRO = 1e3;
+	/* Median percentile */
+	private final static double MEDIAN = 50;
+	/* High percentile */
+	private final static double HIGH = 99;
+	/* Number of minutes in a day */
+	private final static int MIN_PER_DAY = 1440;
+
+	/**
+	 * Constructs new, empty metrics.
+	 *
+	 * @param enabled
+	 *            true to record the metrics
+	 */
+	public ChargeMetrics(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Gets the metrics shared by every entry point.
+	 *
+	 * @return the shared metrics
+	 */
+	public static ChargeMetrics shared() {
+		// only the first call after the metrics are turned on takes the lock
+		if (SHARED.enabled && !SHARED.registered) {
+			SHARED.register();
+		}
+		return SHARED;
+	}
+
+	/**
+	 * Are the metrics being recorded?
+	 *
+	 * @return true if the metrics are on
+	 */
+	@Override
+	public boolean isEnabled() {
+		return this.enabled;
+	}
+
+	/**
+	 * Turns recording on or off. Turning the shared metrics on registers them
+	 * with the platform MBean server.
+	 *
+	 * @param enabled
+	 *            true to record the metrics
+	 */
+	@Override
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		if (enabled && this == SHARED) {
+			register();
+		}
+	}
+
+	/**
+	 * Records the times to read and calculate one case, and counts it.
+	 *
+	 * @param parseNanos
+	 *            time to read the entries in nanoseconds
+	 * @param calculateNanos
+	 *            time to calculate the minutes in nanoseconds
+	 * @param multi
+	 *            whether this is a multi-day charge
+	 * @param crossesYear
+	 *            whether the charge starts in the year before its stop
+	 */
+	public void recordCase(long parseNanos, long calculateNanos, boolean multi, boolean crossesYear) {
+		this.parse.record(parseNanos);
+		this.calculate.record(calculateNanos);
+		count(multi, crossesYear);
+	}
+
+	/**
+	 * Counts a case answered from the ChargeCache, without timing it.
+	 *
+	 * @param charge
+	 *            the cached charges
+	 */
+	public void countCase(ChargeTime charge) {
+		if (this.enabled) {
+			count(charge.isMulti(), charge.getResult().getStartYear() != charge.getYear());
+		}
+	}
+
+	/**
+	 * Counts a case with years calculated by ChargeCalculator.calculate
+	 * straight into a result array, without timing it.
+	 *
+	 * @param stopMinute
+	 *            stop, minutes since 1970-01-01 00:00
+	 * @param multi
+	 *            whether this is a multi-day charge
+	 * @param result
+	 *            the calculated result
+	 */
+	public void countCase(long stopMinute, boolean multi, int[] result) {
+		if (this.enabled) {
+			int stopYear = CalendarYear.yearOf((int) Math.floorDiv(stopMinute, MIN_PER_DAY));
+			count(multi, result[ChargeCalculator.START_YEAR] != stopYear);
+		}
+	}
+
+	/**
+	 * Records the time to format one report.
+	 *
+	 * @param nanos
+	 *            the time in nanoseconds
+	 */
+	public void recordFormat(long nanos) {
+		this.format.record(nanos);
+	}
+
+	/**
+	 * Counts an entry that is not in the form of "MMdd HHmm".
+	 */
+	public void countInvalidEntry() {
+		if (this.enabled) {
+			this.invalidEntries.increment();
+		}
+	}
+
+	/**
+	 * Counts a case with a date that is not a date of its year.
+	 */
+	public void countInvalidDate() {
+		if (this.enabled) {
+			this.invalidDates.increment();
+		}
+	}
+
+	/**
+	 * Counts a case whose entries failed validation: a month, day, order or
+	 * span out of range as an invalid date, anything else as an invalid entry.
+	 * Rows with the wrong number of fields or a bad multi-day flag are not
+	 * counted.
+	 *
+	 * @param error
+	 *            why the case failed
+	 */
+	public void countError(ChargeError error) {
+		if (error == ChargeError.FIELDS || error == ChargeError.MULTI_FLAG) {
+			return;
+		}
+		if (error == ChargeError.MONTH || error == ChargeError.DAY || error == ChargeError.ORDER
+				|| error == ChargeError.SPAN) {
+			countInvalidDate();
+		} else {
+			countInvalidEntry();
+		}
+	}
+
+	@Override
+	public long getSingleDayCases() {
+		return this.singleDay.sum();
+	}
+
+	@Override
+	public long getMultiDayCases() {
+		return this.multiDay.sum();
+	}
+
+	@Override
+	public long getYearCrossingCases() {
+		return this.yearCrossing.sum();
+	}
+
+	@Override
+	public long getInvalidEntries() {
+		return this.invalidEntries.sum();
+	}
+
+	@Override
+	public long getInvalidDates() {
+		return this.invalidDates.sum();
+	}
+
+	@Override
+	public double getParseMedian() {
+		return this.parse.getPercentile(MEDIAN) / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public double getParse99thPercentile() {
+		return this.parse.getPercentile(HIGH) / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public double getCalculateMedian() {
+		return this.calculate.getPercentile(MEDIAN) / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public double getCalculate99thPercentile() {
+		return this.calculate.getPercentile(HIGH) / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public double getFormatMedian() {
+		return this.format.getPercentile(MEDIAN) / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public double getFormat99thPercentile() {
+		return this.format.getPercentile(HIGH) / NANOS_PER_MICRO;
+	}
+
+	/**
+	 * Gets the histogram of the times to read the entries of a case.
+	 *
+	 * @return the parse times
+	 */
+	public LatencyHistogram getParseTimes() {
+		return this.parse;
+	}
+
+	/**
+	 * Gets the histogram of the times to calculate the minutes of a case.
+	 *
+	 * @return the calculation times
+	 */
+	public LatencyHistogram getCalculateTimes() {
+		return this.calculate;
+	}
+
+	/**
+	 * Gets the histogram of the times to format a report.
+	 *
+	 * @return the format times
+	 */
+	public LatencyHistogram getFormatTimes() {
+		return this.format;
+	}
+
+	@Override
+	public void reset() {
+		this.parse.reset();
+		this.calculate.reset();
+		this.format.reset();
+		this.singleDay.reset();
+		this.multiDay.reset();
+		this.yearCrossing.reset();
+		this.invalidEntries.reset();
+		this.invalidDates.reset();
+	}
+
+	@Override
+	public String dump() {
+		StringBuilder text = new StringBuilder();
+		text.append("metrics ").append(this.enabled ? "on" : "off").append('\n');
+		text.append("single-day cases ").append(getSingleDayCases()).append('\n');
+		text.append("multi-day cases ").append(getMultiDayCases()).append('\n');
+		text.append("year-crossing cases ").append(getYearCrossingCases()).append('\n');
+		text.append("invalid entries ").append(getInvalidEntries()).append('\n');
+		text.append("invalid dates ").append(getInvalidDates()).append('\n');
+		text.append("parse ").append(this.parse).append('\n');
+		text.append("calculate ").append(this.calculate).append('\n');
+		text.append("format ").append(this.format).append('\n');
+		text.append(ChargeCache.shared()).append('\n');
+		return text.toString();
+	}
+
+	/**
+	 * Returns the metrics as plain text.
+	 *
+	 * @return the metrics, one per line
+	 */
+	@Override
+	public String toString() {
+		return dump();
+	}
+
+	/*
+	 * Counts one case by its kind.
+	 */
+	private void count(boolean multi, boolean crossesYear) {
+		if (crossesYear) {
+			this.yearCrossing.increment();
+		} else if (multi) {
+			this.multiDay.increment();
+		} else {
+			this.singleDay.increment();
+		}
+	}
+
+	/*
+	 * Registers the shared metrics with the platform MBean server, once.
+	 */
+	private synchronized void register() {
+		if (this.registered) {
+			return;
+		}
+		this.registered = true;
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(MBEAN_NAME);
+			if (!server.isRegistered(name)) {
+				server.registerMBean(this, name);
+			}
+		} catch (JMException | SecurityException e) {
+			System.err.println("Could not register the charge metrics: " + e.getMessage());
+		}
+	}
+}
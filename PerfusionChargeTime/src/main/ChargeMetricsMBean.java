@@ -0,0 +1,115 @@
+package main;
+
+/**
+ * ChargeMetricsMBean is the JMX view of the calculation metrics, registered as
+ * "chargetime:type=ChargeMetrics". Times are in microseconds.
+ *
+ * @author Kimberle McGill
+ * @version 1.2.261018
+ */
+public interface ChargeMetricsMBean {
+
+	/**
+	 * Are the metrics being recorded?
+	 *
+	 * @return true if the metrics are on
+	 */
+	boolean isEnabled();
+
+	/**
+	 * Turns recording on or off.
+	 *
+	 * @param enabled
+	 *            true to record the metrics
+	 */
+	void setEnabled(boolean enabled);
+
+	/**
+	 * Gets the number of single-day cases calculated.
+	 *
+	 * @return the number of single-day cases
+	 */
+	long getSingleDayCases();
+
+	/**
+	 * Gets the number of multi-day cases calculated within one year.
+	 *
+	 * @return the number of multi-day cases
+	 */
+	long getMultiDayCases();
+
+	/**
+	 * Gets the number of multi-day cases calculated from one year into the next.
+	 *
+	 * @return the number of year-crossing cases
+	 */
+	long getYearCrossingCases();
+
+	/**
+	 * Gets the number of entries that were not in the form of "MMdd HHmm".
+	 *
+	 * @return the number of invalid entries
+	 */
+	long getInvalidEntries();
+
+	/**
+	 * Gets the number of cases whose dates were not dates of their year.
+	 *
+	 * @return the number of invalid dates
+	 */
+	long getInvalidDates();
+
+	/**
+	 * Gets the median time to read the entries of a case.
+	 *
+	 * @return the median parse time in microseconds
+	 */
+	double getParseMedian();
+
+	/**
+	 * Gets the 99th percentile time to read the entries of a case.
+	 *
+	 * @return the 99th percentile parse time in microseconds
+	 */
+	double getParse99thPercentile();
+
+	/**
+	 * Gets the median time to calculate the minutes of a case.
+	 *
+	 * @return the median calculation time in microseconds
+	 */
+	double getCalculateMedian();
+
+	/**
+	 * Gets the 99th percentile time to calculate the minutes of a case.
+	 *
+	 * @return the 99th percentile calculation time in microseconds
+	 */
+	double getCalculate99thPercentile();
+
+	/**
+	 * Gets the median time to format a report.
+	 *
+	 * @return the median format time in microseconds
+	 */
+	double getFormatMedian();
+
+	/**
+	 * Gets the 99th percentile time to format a report.
+	 *
+	 * @return the 99th percentile format time in microseconds
+	 */
+	double getFormat99thPercentile();
+
+	/**
+	 * Removes every recorded count and time.
+	 */
+	void reset();
+
+	/**
+	 * Gets every metric as plain text.
+	 *
+	 * @return the metrics, one per line
+	 */
+	String dump();
+}
@@ -0,0 +1,262 @@
+package main;
+
+import java.io.IOException;
+
+/**
+ * ChargeReport renders the charges of a ChargeTime, from its ChargeResult, as
+ * plain text (the layout shown in the user interface), CSV or JSON. Reports are
+ * appended to a StringBuilder sized for the number of days up front, with
+ * numbers appended as digits and day labels taken from the CalendarYear
+ * tables, so no String is made for any line of a multi-day breakdown.
+ *
+ * @author Kimberle McGill
+ * @version 1.2.261018
+ */
+public final class ChargeReport {
+
+	/**
+	 * Layout of a rendered report.
+	 */
+	public enum Format {
+		/** Text as shown in the user interface */
+		TEXT,
+		/** One CSV row per day and a total row */
+		CSV,
+		/** One JSON object */
+		JSON
+	}
+
+	/* Buffer reused by each thread for writing reports */
+	private final static ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+			return new StringBuilder(MAX_KEPT_BUFFER);
+		}
+	};
+	/* Largest buffer kept between reports */
+	private final static int MAX_KEPT_BUFFER = 1 << 14;
+	/* Characters in a report besides its day lines */
+	private final static int FIXED_CHARS = 160;
+	/* Characters in one day line */
+	private final static int DAY_CHARS = 80;
+	/* The value for a single */
+	private final static int SINGLE = 1;
+
+	/*
+	 * All static, never constructed.
+	 */
+	private ChargeReport() {
+	}
+
+	/**
+	 * Renders the charges as a new String.
+	 *
+	 * @param charge
+	 *            the charges to render
+	 * @param format
+	 *            the layout of the report
+	 * @return the report
+	 */
+	public static String render(ChargeTime charge, Format format) {
+		return append(new StringBuilder(estimateLength(charge)), charge, format).toString();
+	}
+
+	/**
+	 * Renders the charges to the given Appendable (for example a Writer),
+	 * through a buffer reused by the calling thread.
+	 *
+	 * @param out
+	 *            where the report is written
+	 * @param charge
+	 *            the charges to render
+	 * @param format
+	 *            the layout of the report
+	 * @throws IOException
+	 *             if the report cannot be written
+	 */
+	public static void write(Appendable out, ChargeTime charge, Format format) throws IOException {
+		StringBuilder buffer = BUFFER.get();
+		buffer.setLength(0);
+		append(buffer, charge, format);
+		out.append(buffer);
+		if (buffer.capacity() > MAX_KEPT_BUFFER) {
+			BUFFER.remove();
+		}
+	}
+
+	/**
+	 * Appends the charges to the given buffer.
+	 *
+	 * @param out
+	 *            the buffer the report is appended to
+	 * @param charge
+	 *            the charges to render
+	 * @param format
+	 *            the layout of the report
+	 * @return the buffer
+	 */
+	public static StringBuilder append(StringBuilder out, ChargeTime charge, Format format) {
+		ChargeMetrics metrics = ChargeMetrics.shared();
+		boolean timed = metrics.isEnabled();
+		long begin = timed ? System.nanoTime() : 0;
+		out.ensureCapacity(out.length() + estimateLength(charge));
+		if (format == Format.TEXT) {
+			appendText(out, charge);
+		} else if (format == Format.CSV) {
+			appendCsv(out, charge);
+		} else {
+			appendJson(out, charge);
+		}
+		if (timed) {
+			metrics.recordFormat(System.nanoTime() - begin);
+		}
+		return out;
+	}
+
+	/**
+	 * Appends a quoted and escaped JSON string.
+	 *
+	 * @param out
+	 *            the buffer the string is appended to
+	 * @param value
+	 *            the string to append
+	 * @return the buffer
+	 */
+	public static StringBuilder appendJsonString(StringBuilder out, CharSequence value) {
+		out.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				out.append('\\').append(c);
+			} else if (c < ' ') {
+				out.append("\\u00").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xF, 16));
+			} else {
+				out.append(c);
+			}
+		}
+		return out.append('"');
+	}
+
+	/*
+	 * Appends the text shown in the user interface.
+	 */
+	private static void appendText(StringBuilder out, ChargeTime charge) {
+		ChargeResult result = charge.getResult();
+		long totalMins = result.getTotalMinutes();
+
+		// single day, total minutes only to be displayed
+		if (!charge.isMulti()) {
+			out.append("Total minutes: \t");
+			appendSplit(out, totalMins);
+			out.append(" minutes\n");
+			return;
+		}
+
+		// one line for each day
+		DailyMinutes days = result.getDailyMinutes();
+		while (days.hasNext()) {
+			int minutes = days.nextInt();
+			out.append("Mintues for ").append(days.getLabel()).append(": \t");
+			appendSplit(out, minutes);
+			out.append('\n');
+		}
+
+		// use proper grammar (minute vs. minutes)
+		int minutesOnly = result.getMinutesPastHours();
+		out.append("\nHours, minutes: \t").append(result.getHours()).append(" hours, ").append(minutesOnly);
+		out.append(minutesOnly == SINGLE ? " minute\n" : " minutes\n");
+		out.append("Total minutes: \t\t").append(totalMins);
+		out.append(totalMins == SINGLE ? " minute\n" : " minutes\n");
+	}
+
+	/*
+	 * Appends a header, one row per day (multi-day only) and a total row.
+	 */
+	private static void appendCsv(StringBuilder out, ChargeTime charge) {
+		ChargeResult result = charge.getResult();
+		out.append("day,minutes,charge_minutes,extra_minutes\n");
+		if (charge.isMulti()) {
+			DailyMinutes days = result.getDailyMinutes();
+			while (days.hasNext()) {
+				int minutes = days.nextInt();
+				out.append(days.getLabel()).append(',').append(minutes).append(',');
+				appendCsvSplit(out, minutes);
+			}
+		}
+		out.append("total,").append(result.getTotalMinutes()).append(',');
+		appendCsvSplit(out, result.getTotalMinutes());
+	}
+
+	/*
+	 * Appends one JSON object, with the days of a multi-day charge.
+	 */
+	private static void appendJson(StringBuilder out, ChargeTime charge) {
+		ChargeResult result = charge.getResult();
+		long totalMins = result.getTotalMinutes();
+		out.append("{\"start\":");
+		appendJsonString(out, charge.getStart());
+		out.append(",\"stop\":");
+		appendJsonString(out, charge.getStop());
+		out.append(",\"multi\":").append(charge.isMulti());
+		out.append(",\"totalMinutes\":").append(totalMins);
+		out.append(",\"hours\":").append(result.getHours());
+		out.append(",\"minutes\":").append(result.getMinutesPastHours());
+		appendJsonSplit(out, totalMins);
+		if (charge.isMulti()) {
+			out.append(",\"days\":[");
+			DailyMinutes days = result.getDailyMinutes();
+			boolean first = true;
+			while (days.hasNext()) {
+				int minutes = days.nextInt();
+				if (!first) {
+					out.append(',');
+				}
+				first = false;
+				out.append("{\"month\":").append(days.getMonth());
+				out.append(",\"day\":").append(days.getDayOfMonth());
+				out.append(",\"minutes\":").append(minutes);
+				appendJsonSplit(out, minutes);
+				out.append('}');
+			}
+			out.append(']');
+		}
+		out.append('}');
+	}
+
+	/*
+	 * Split the minutes that are > 999 to minutes plus 999
+	 * for entering charges into ChargeMaster.
+	 */
+	private static void appendSplit(StringBuilder out, long minutes) {
+		if (minutes > ChargeResult.MAX_CHARGE_MINUTES) {
+			out.append(ChargeResult.MAX_CHARGE_MINUTES).append(" + ").append(ChargeResult.extraMinutes(minutes))
+					.append(" (").append(minutes).append(')');
+		} else {
+			out.append(minutes);
+		}
+	}
+
+	/*
+	 * Appends the ChargeMaster split of the minutes at 999 as JSON members.
+	 */
+	private static void appendJsonSplit(StringBuilder out, long minutes) {
+		out.append(",\"chargeMinutes\":").append(ChargeResult.chargeMinutes(minutes));
+		out.append(",\"extraMinutes\":").append(ChargeResult.extraMinutes(minutes));
+	}
+
+	/*
+	 * Appends the ChargeMaster split of the minutes at 999 as the last two CSV
+	 * columns.
+	 */
+	private static void appendCsvSplit(StringBuilder out, long minutes) {
+		out.append(ChargeResult.chargeMinutes(minutes)).append(',').append(ChargeResult.extraMinutes(minutes));
+		out.append('\n');
+	}
+
+	/*
+	 * Returns the expected length of a report, for sizing its buffer.
+	 */
+	private static int estimateLength(ChargeTime charge) {
+		return charge.isMulti() ? FIXED_CHARS + charge.getNumberOfDays() * DAY_CHARS : FIXED_CHARS;
+	}
+}
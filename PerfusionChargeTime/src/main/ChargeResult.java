@@ -0,0 +1,273 @@
+package main;
+
+import java.time.ZoneId;
+
+/**
+ * ChargeResult holds the calculated minutes of one charge as numbers: the
+ * total minutes, the same as hours and minutes, the number of days, the
+ * minutes on each day and the 999-minute ChargeMaster split. Nothing is
+ * formatted; the text of a charge is rendered from its result by ChargeReport
+ * only when it is asked for. A ChargeResult is immutable.
+ *
+ * A result calculated in a time zone counts the minutes that actually pass,
+ * so a charge across the night the clocks change is an hour shorter or
+ * longer than the wall clock shows, and so is that day of the breakdown.
+ *
+ * @author Kimberle McGill
+ * @version 1.2.261018
+ */
+public final class ChargeResult {
+
+	/** Most minutes entered on one ChargeMaster charge */
+	public static final int MAX_CHARGE_MINUTES = 999;
+
+	/* Calculated minutes, see ChargeCalculator, never changed */
+	private final int[] result;
+	/* Offsets of the time zone, null for the wall clock */
+	private final ZoneOffsets zone;
+	/* Number of minutes in an hour */
+	private final static int MIN_PER_HOUR = 60;
+
+	/*
+	 * Wraps a result filled in by ChargeCalculator.calculate, which must not be
+	 * changed afterwards.
+	 */
+	ChargeResult(int[] result, ZoneOffsets zone) {
+		this.result = result;
+		this.zone = zone;
+	}
+
+	/**
+	 * Calculates the charge minutes between two packed entries (see
+	 * ChargeCalculator) with the same rules as ChargeTime.
+	 *
+	 * @param start
+	 *            the packed start date and time
+	 * @param stop
+	 *            the packed stop date and time
+	 * @param multi
+	 *            whether this is a multi-day charge
+	 * @param year
+	 *            the year of the stop date
+	 * @return the calculated result
+	 * @throws IllegalArgumentException
+	 *             if either entry is not a date of its year
+	 */
+	public static ChargeResult calculate(int start, int stop, boolean multi, int year) {
+		int[] result = new int[ChargeCalculator.RESULT_SIZE];
+		ChargeCalculator.calculate(start, stop, multi, year, result);
+		return new ChargeResult(result, null);
+	}
+
+	/**
+	 * Calculates the charge minutes between two packed entries with the same
+	 * rules as ChargeTime, counting the minutes that actually pass in the given
+	 * time zone.
+	 *
+	 * @param start
+	 *            the packed start date and time
+	 * @param stop
+	 *            the packed stop date and time
+	 * @param multi
+	 *            whether this is a multi-day charge
+	 * @param year
+	 *            the year of the stop date
+	 * @param zone
+	 *            the time zone, or null for the wall clock
+	 * @return the calculated result
+	 * @throws IllegalArgumentException
+	 *             if either entry is not a date of its year
+	 */
+	public static ChargeResult calculate(int start, int stop, boolean multi, int year, ZoneId zone) {
+		if (zone == null) {
+			return calculate(start, stop, multi, year);
+		}
+		ZoneOffsets offsets = ZoneOffsets.of(zone);
+		int[] result = new int[ChargeCalculator.RESULT_SIZE];
+		ChargeCalculator.calculate(start, stop, multi, year, offsets, result);
+		return new ChargeResult(result, offsets);
+	}
+
+	/**
+	 * Calculates the charge minutes between two wall clock minutes, for entries
+	 * that carry their own years (see ChargeCalculator.parseDateTime). The
+	 * charge may be of any length.
+	 *
+	 * @param startMinute
+	 *            the start in minutes since 1970-01-01 00:00
+	 * @param stopMinute
+	 *            the stop in minutes since 1970-01-01 00:00
+	 * @param zone
+	 *            the time zone, or null for the wall clock
+	 * @return the calculated result
+	 * @throws IllegalArgumentException
+	 *             if the charge is too long to count in minutes
+	 */
+	public static ChargeResult calculate(long startMinute, long stopMinute, ZoneId zone) {
+		ZoneOffsets offsets = zone == null ? null : ZoneOffsets.of(zone);
+		int[] result = new int[ChargeCalculator.RESULT_SIZE];
+		ChargeCalculator.calculate(startMinute, stopMinute, offsets, result);
+		return new ChargeResult(result, offsets);
+	}
+
+	/**
+	 * Gets the time zone the minutes were counted in.
+	 *
+	 * @return the time zone, or null for the wall clock
+	 */
+	public ZoneId getZone() {
+		return this.zone == null ? null : this.zone.getZone();
+	}
+
+	/**
+	 * Gets the total number of minutes charged.
+	 *
+	 * @return the total minutes
+	 */
+	public long getTotalMinutes() {
+		return this.result[ChargeCalculator.TOTAL_MINUTES];
+	}
+
+	/**
+	 * Gets the whole hours of the total minutes.
+	 *
+	 * @return the hours
+	 */
+	public long getHours() {
+		return getTotalMinutes() / MIN_PER_HOUR;
+	}
+
+	/**
+	 * Gets the minutes left over after the whole hours of the total minutes.
+	 *
+	 * @return the minutes past the hours
+	 */
+	public int getMinutesPastHours() {
+		return (int) (getTotalMinutes() % MIN_PER_HOUR);
+	}
+
+	/**
+	 * Gets the total minutes entered on the ChargeMaster charge, at most 999.
+	 *
+	 * @return the charge minutes
+	 */
+	public long getChargeMinutes() {
+		return chargeMinutes(getTotalMinutes());
+	}
+
+	/**
+	 * Gets the total minutes over 999, entered on the extra charge.
+	 *
+	 * @return the extra minutes
+	 */
+	public long getExtraMinutes() {
+		return extraMinutes(getTotalMinutes());
+	}
+
+	/**
+	 * Gets the number of calendar days charged, counting both the start and stop
+	 * days.
+	 *
+	 * @return the number of days
+	 */
+	public int getNumberOfDays() {
+		return this.result[ChargeCalculator.NUMBER_OF_DAYS];
+	}
+
+	/**
+	 * Gets the minutes charged on one day.
+	 *
+	 * @param dayIndex
+	 *            zero based index of the day
+	 * @return the minutes charged on the day
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no such day
+	 */
+	public int getDayMinutes(int dayIndex) {
+		if (dayIndex < 0 || dayIndex >= getNumberOfDays()) {
+			throw new IndexOutOfBoundsException("Day " + dayIndex + " of " + getNumberOfDays());
+		}
+		return ChargeCalculator.minutesOnDay(this.result, dayIndex, this.zone);
+	}
+
+	/**
+	 * Gets the minutes charged on each day, first day first, worked out as they
+	 * are iterated along with the date of each day.
+	 *
+	 * @return the minutes for each day
+	 */
+	public DailyMinutes getDailyMinutes() {
+		return new DailyMinutes(this.result, this.zone);
+	}
+
+	/**
+	 * Gets the minutes charged on each day as a new array, first day first.
+	 *
+	 * @return the minutes for each day
+	 */
+	public int[] toDailyMinutesArray() {
+		int[] days = new int[getNumberOfDays()];
+		for (int i = 0; i < days.length; i++) {
+			days[i] = ChargeCalculator.minutesOnDay(this.result, i, this.zone);
+		}
+		return days;
+	}
+
+	/**
+	 * Gets the start date as days since 1970-01-01.
+	 *
+	 * @return the epoch day of the start
+	 */
+	public int getStartEpochDay() {
+		return this.result[ChargeCalculator.START_EPOCH_DAY];
+	}
+
+	/**
+	 * Gets the year of the start date.
+	 *
+	 * @return the year the charge started in
+	 */
+	public int getStartYear() {
+		return this.result[ChargeCalculator.START_YEAR];
+	}
+
+	/**
+	 * Gets the start as minutes since 1970-01-01 00:00 on the wall clock.
+	 *
+	 * @return the start in epoch minutes
+	 */
+	public long getStartEpochMinute() {
+		return ChargeCalculator.startWallMinute(this.result);
+	}
+
+	/**
+	 * Gets the stop as minutes since 1970-01-01 00:00 on the wall clock.
+	 *
+	 * @return the stop in epoch minutes
+	 */
+	public long getStopEpochMinute() {
+		return getStartEpochMinute() + getTotalMinutes() + this.result[ChargeCalculator.OFFSET_CHANGE];
+	}
+
+	/**
+	 * Gets the minutes of a total entered on the ChargeMaster charge.
+	 *
+	 * @param minutes
+	 *            the total minutes
+	 * @return the minutes up to 999
+	 */
+	public static long chargeMinutes(long minutes) {
+		return Math.min(minutes, MAX_CHARGE_MINUTES);
+	}
+
+	/**
+	 * Gets the minutes of a total entered on the extra charge.
+	 *
+	 * @param minutes
+	 *            the total minutes
+	 * @return the minutes over 999, or 0
+	 */
+	public static long extraMinutes(long minutes) {
+		return Math.max(minutes - MAX_CHARGE_MINUTES, 0);
+	}
+}
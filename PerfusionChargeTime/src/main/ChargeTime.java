@@ -1,81 +1,63 @@
 package main;
 
-import java.math.BigDecimal;
-import java.text.DateFormatSymbols;
-import java.text.SimpleDateFormat;
+import java.time.Clock;
 import java.time.LocalDate;
-import java.util.Calendar;
-import java.util.Date;
+import java.time.ZoneId;
+import java.util.Objects;
 
 /**
  * ChargeTime maintains the total times for Perfusion Charges and the start and
  * stop days and times. Calculates the total number of days, hours and minutes
  * of charges. Also calculates daily totals for multiple days.
  * 
+ * A ChargeTime is immutable: the charges are calculated once when it is
+ * constructed, against a reference year taken from a clock or given directly,
+ * so the same ChargeTime may be shared between threads and cached (see
+ * ChargeCache). The minutes are kept as numbers in a ChargeResult and the
+ * charges text is only formatted, by ChargeReport, the first time it is asked
+ * for.
+ * 
+ * Entries without years are taken to stop in the reference year. A multi-day
+ * charge whose start month is after its stop month (ex., dec 28 - jan 10)
+ * started in the year before, so it is never more than a year long. A
+ * multi-day charge that stops before it starts within the same month (ex.,
+ * "0310 1700" to "0309 0800") is most likely a mistyped entry, and is refused
+ * with ChargeError.ORDER rather than charged as most of a year.
+ * 
+ * Entries may also be given with their years, in the form of "yyyyMMdd HHmm",
+ * for reprocessing past years or runs of several months: the reference year
+ * is then not used, and the charge may be of any length.
+ * 
  * @author Kimberle McGill
- * @version 1.1.170314
+ * @version 1.2.261018
  */
-public class ChargeTime {
+public final class ChargeTime {
 
 	/* Start date and time */
-	private String start;
+	private final String start;
 	/* End date and time */
-	private String stop;
+	private final String stop;
 	/* Is this a multi-day charge? */
-	private Boolean multi;
-	/* Charges for the given start and stop days and times */
+	private final boolean multi;
+	/* Year of the stop date */
+	private final int year;
+	/* Calculated minutes */
+	private final ChargeResult result;
+	/* Charges for the given start and stop days and times, formatted on first use */
 	private String charges;
-	/* Format of date/time entry */
-	private final static String ENTRY_FORMAT = "MMdd HHmm";
-	/* Format of time only */
-	private final static String TIME_FORMAT = "HHmm";
-	/* Number of minutes in an hour */
-	private final static int MIN_PER_HOUR = 60;
-	/* Number of hours in a day */
-	private final static int HOUR_PER_DAY = 24;
-	/* Milliseconds in a second */
-	private final static int MILLS_PER_SEC = 1000;
-	/* Just before midnight */
-	private final static String LAST_MIN_OF_DAY = "2359";
-	/* Midnight */
-	private final static String MIDNIGHT = "0000";
-	/* Index of start of month substring */
-	private final static int MONTH_START = 0;
-	/* Index of end of month substring */
-	private final static int MONTH_END = 2;
-	/* Index of start of day substring */
-	private final static int DAY_START = 2;
-	/* Index of end of day substring */
-	private final static int DAY_END = 4;
-	/* Index for the start of the time substring */
-	private final static int TIME_START = 5;
-	/* Length of proper entry */
-	private final static int PROPER_ENTRY = 9;
-	/* Month of December */
-	private final static String DEC = "12";
-	/* Month of January */
-	private final static String JAN = "01";
-	/* Milliseconds in a year */
-	private final static long MILLS_IN_YEAR = (long) 1000 * 60 * 60 * 24 * 365;
-	/* Milliseconds in a leap year */
-	private final static long MILLS_IN_LEAP_YEAR = (long) 1000 * 60 * 60 * 24 * 366;
-	/* Hundreds divisible by 4 */
-	private final static int HUNDREDS_BY_FOUR = 400;
-	/* Ones divisible by 4 */
-	private final static int ONES_BY_FOUR = 4;
-	/* Hundreds */
-	private final static int HUNDREDS = 100;
-	/* Maximum number of minutes for charge entry */
-	private final static int MAX_MINS = 999;
-	/* The value for a single */
-	private final static int SINGLE = 1;
+	/* Number of minutes in a day */
+	private final static int MIN_PER_DAY = 1440;
+	/* First minute of the year 0 */
+	private final static long FIRST_MINUTE = (long) CalendarYear.of(0).firstEpochDay() * MIN_PER_DAY;
+	/* First minute of the year 10000 */
+	private final static long END_MINUTE = (long) CalendarYear.of(10000).firstEpochDay() * MIN_PER_DAY;
 
 	/**
 	 * Constructs a new ChargeTime with the given start time and stop time, and if
 	 * a multi charge event (multi = true), then includes the start date and 
 	 * stop date. The date is in the format of MMdd and the time is in the format
 	 * of HHmm. Proper start format is "MMdd HHmm". Proper stop format is 
-	 * "MMdd HHmm".
+	 * "MMdd HHmm". The stop date is taken to be in the current year.
 	 * 
 	 * @param start
 	 *            the starting date and time in the format of "MMdd HHmm"
@@ -87,252 +69,287 @@ public class ChargeTime {
 	 *             if the parameters given are not in the proper format
 	 */
 	public ChargeTime(String start, String stop, Boolean multi) {
+		this(start, stop, multi, Clock.systemDefaultZone());
+	}
+
+	/**
+	 * Constructs a new ChargeTime with the stop date in the current year of the
+	 * given clock.
+	 * 
+	 * @param start
+	 *            the starting date and time in the format of "MMdd HHmm"
+	 * @param stop
+	 *            the stopping date and time in the format of "MMdd HHmm"
+	 * @param multi
+	 *            boolean for whether this is a multi-day event
+	 * @param clock
+	 *            clock giving the current year
+	 * @throws IllegalArgumentException
+	 *             if the parameters given are not in the proper format
+	 */
+	public ChargeTime(String start, String stop, boolean multi, Clock clock) {
+		this(start, stop, multi, LocalDate.now(clock).getYear());
+	}
+
+	/**
+	 * Constructs a new ChargeTime with the stop date in the given year. A
+	 * multi-day charge whose start month is after its stop month starts in the
+	 * year before.
+	 * 
+	 * @param start
+	 *            the starting date and time in the format of "MMdd HHmm", or
+	 *            "yyyyMMdd HHmm"
+	 * @param stop
+	 *            the stopping date and time in the format of "MMdd HHmm", or
+	 *            "yyyyMMdd HHmm"
+	 * @param multi
+	 *            boolean for whether this is a multi-day event
+	 * @param year
+	 *            the year of the stop date, not used for entries with years
+	 * @throws IllegalArgumentException
+	 *             if the parameters given are not in the proper format
+	 */
+	public ChargeTime(String start, String stop, boolean multi, int year) {
+		this(start, stop, multi, year, null);
+	}
+
+	/**
+	 * Constructs a new ChargeTime with the stop date in the given year, counting
+	 * the minutes that actually pass in the given time zone: a charge across the
+	 * night the clocks go forward is an hour shorter than the wall clock shows,
+	 * and one across the night they go back an hour longer.
+	 * 
+	 * @param start
+	 *            the starting date and time in the format of "MMdd HHmm", or
+	 *            "yyyyMMdd HHmm"
+	 * @param stop
+	 *            the stopping date and time in the format of "MMdd HHmm", or
+	 *            "yyyyMMdd HHmm"
+	 * @param multi
+	 *            boolean for whether this is a multi-day event
+	 * @param year
+	 *            the year of the stop date, not used for entries with years
+	 * @param zone
+	 *            the time zone of the entries, or null for the wall clock
+	 * @throws IllegalArgumentException
+	 *             if the parameters given are not in the proper format
+	 */
+	public ChargeTime(String start, String stop, boolean multi, int year, ZoneId zone) {
 		this.start = start;
 		this.stop = stop;
 		this.multi = multi;
-		if (isProperFormat(this.start) && isProperFormat(this.stop)) {
-			this.charges = calculateCharges();
+		ChargeMetrics metrics = ChargeMetrics.shared();
+		boolean timed = metrics.isEnabled();
+		long begin = timed ? System.nanoTime() : 0;
+		int startEntry = ChargeCalculator.parseEntry(this.start);
+		int stopEntry = ChargeCalculator.parseEntry(this.stop);
+		long startMinute = ChargeCalculator.INVALID_MINUTE;
+		long stopMinute = ChargeCalculator.INVALID_MINUTE;
+		boolean dated = startEntry == ChargeCalculator.INVALID || stopEntry == ChargeCalculator.INVALID;
+		ChargeError error;
+		if (dated) {
+			// entries with their own years
+			startMinute = ChargeCalculator.parseDateTime(this.start);
+			stopMinute = ChargeCalculator.parseDateTime(this.stop);
+			error = startMinute == ChargeCalculator.INVALID_MINUTE ? ChargeValidator.checkDateTime(this.start)
+					: stopMinute == ChargeCalculator.INVALID_MINUTE ? ChargeValidator.checkDateTime(this.stop)
+							: ChargeValidator.checkSpan(startMinute, stopMinute);
 		} else {
-			throw new IllegalArgumentException("Invalid entry! Entries must be in the form of MMdd or HHmm");
+			error = ChargeValidator.check(startEntry, stopEntry, this.multi, year);
+		}
+		if (error != null) {
+			metrics.countError(error);
+			throw new IllegalArgumentException(error.getMessage());
+		}
+		long parsed = timed ? System.nanoTime() : 0;
+		this.result = dated ? ChargeResult.calculate(startMinute, stopMinute, zone)
+				: ChargeResult.calculate(startEntry, stopEntry, this.multi, year, zone);
+		this.year = dated ? CalendarYear.yearOf((int) Math.floorDiv(stopMinute, MIN_PER_DAY)) : year;
+		if (timed) {
+			metrics.recordCase(parsed - begin, System.nanoTime() - parsed, this.multi,
+					this.result.getStartYear() != this.year);
 		}
 	}
 
 	/**
-	 * Gets the calculated charges.
+	 * Constructs a new ChargeTime between two wall clock minutes, which carry
+	 * their own years, so the charge may be of any length. The start and stop
+	 * are kept in the form of "yyyyMMdd HHmm".
 	 * 
-	 * @return the calculated charges as a string
+	 * @param startMinute
+	 *            the start in minutes since 1970-01-01 00:00
+	 * @param stopMinute
+	 *            the stop in minutes since 1970-01-01 00:00
+	 * @param multi
+	 *            boolean for whether this is a multi-day event
+	 * @param zone
+	 *            the time zone of the minutes, or null for the wall clock
+	 * @throws IllegalArgumentException
+	 *             if the minutes are not in the years 0 to 9999
 	 */
-	public String getCharges() {
-		return this.charges;
+	public ChargeTime(long startMinute, long stopMinute, boolean multi, ZoneId zone) {
+		this(formatMinute(startMinute), formatMinute(stopMinute), multi, 0, zone);
 	}
 
-	/*
-	 * Calculates charges based on the given start and stop dates and times.
+	/**
+	 * Gets the start date and time.
+	 * 
+	 * @return the start in the format of "MMdd HHmm" or "yyyyMMdd HHmm"
 	 */
-	private String calculateCharges() {
-
-		String timeTotal = "";
-
-		// converts hour in 24 hours format (0-23), day calculation
-		SimpleDateFormat format = new SimpleDateFormat(ENTRY_FORMAT);
-
-		Date d1 = null;
-		Date d2 = null;
-
-		try
-
-		{
-			d1 = format.parse(this.start);
-			d2 = format.parse(this.stop);
-
-			// difference between start date/time and stop date/time in milliseconds
-			long diff = d2.getTime() - d1.getTime();
-
-			// if multi days and crosses to a new year (ex., dec 28 - jan 10)
-			if (this.multi) {
-				if (isNewYear()) { 
-					if (wasLeapYear()) {
-						diff = (d2.getTime() + MILLS_IN_LEAP_YEAR) - d1.getTime();
-					} else {
-						diff = (d2.getTime() + MILLS_IN_YEAR) - d1.getTime();
-					}
-				}
-			}
-
-			// days, hours, minutes, total mins, total hrs
-			long diffMinutes = diff / (MIN_PER_HOUR * MILLS_PER_SEC) % MIN_PER_HOUR;
-			long diffHours = diff / (MIN_PER_HOUR * MIN_PER_HOUR * MILLS_PER_SEC) % HOUR_PER_DAY;
-			long diffDays = diff / (HOUR_PER_DAY * MIN_PER_HOUR * MIN_PER_HOUR * MILLS_PER_SEC);
-			long totalMins = (diffDays * (HOUR_PER_DAY * MIN_PER_HOUR)) + (diffHours * MIN_PER_HOUR) + diffMinutes;
-			double totalHours = (diffDays * HOUR_PER_DAY) + (diffHours) + (diffMinutes / (double) MIN_PER_HOUR);
-
-			// multiple days?
-			if (this.multi) {
-				
-				// for iterating through the proper number of days
-				int numberOfDays = numDaysToCalculate(this.start, this.stop);				
-				int thisDay = SINGLE;
-				// for generating a string date
-				String currentDate = "";
-				Calendar cal = Calendar.getInstance();
-				cal.setTime(d1);
-				DateFormatSymbols dfs = new DateFormatSymbols();
-				
-				while (thisDay <= numberOfDays) {
-                    
-					long minutes;
-					
-					// get first day
-					if (thisDay == SINGLE) {
-						minutes = numberOfMinutes(this.start.substring(TIME_START), LAST_MIN_OF_DAY) + SINGLE;
-					} else if (thisDay == numberOfDays) {
-						minutes = numberOfMinutes(MIDNIGHT, this.stop.substring(TIME_START));
-					} else {
-						minutes = numberOfMinutes(MIDNIGHT, LAST_MIN_OF_DAY) + SINGLE;
-					}
-					
-					currentDate = "" + dfs.getMonths()[cal.get(Calendar.MONTH)] + 
-							" " + cal.get(Calendar.DAY_OF_MONTH);
-					timeTotal += "Mintues for " + currentDate +  ": \t" + splitMins(minutes) + "\n";
-					
-					// move to next day
-					thisDay++;
-					cal.add(Calendar.DAY_OF_MONTH, SINGLE);
-				}
-				
-				// get hours only
-				int hours = (int) totalHours;
-				// get minutes left
-				double minutesLeft = (totalHours - hours) * MIN_PER_HOUR;
-				int minutesOnly = (int) round(minutesLeft, 0);
-				// use proper grammar (minute vs. minutes)
-				if (minutesOnly == SINGLE) {
-					timeTotal += ("\nHours, minutes: \t" + hours + " hours, " + minutesOnly + " minute\n");
-				} else {
-					timeTotal += ("\nHours, minutes: \t" + hours + " hours, " + minutesOnly + " minutes\n");
-				}
-				if (totalMins == SINGLE) {
-					timeTotal += ("Total minutes: \t\t" + totalMins + " minute\n");
-				} else {
-					timeTotal += ("Total minutes: \t\t" + totalMins + " minutes\n");
-				}
-				
-			// single day, total minutes only to be displayed
-			} else {
-				timeTotal = "Total minutes: \t" + splitMins(totalMins) + " minutes\n";
-			}
-
-			return timeTotal;
-
-		} catch (Exception e) {
-			throw new IllegalArgumentException("Invalid calculation in date/times");
-		}
+	public String getStart() {
+		return this.start;
 	}
 
-	/*
-	 * Returns the number of days to calculate
+	/**
+	 * Gets the stop date and time.
+	 * 
+	 * @return the stop in the format of "MMdd HHmm" or "yyyyMMdd HHmm"
 	 */
-	private int numDaysToCalculate(String start, String stop) {
-
-		int thisYear = LocalDate.now().getYear();
-
-		String startDay = thisYear + "-" + start.substring(MONTH_START, MONTH_END);
-		startDay += "-" + start.substring(DAY_START, DAY_END);
-
-		String stopDay = thisYear + "-" + stop.substring(MONTH_START, MONTH_END);
-		stopDay += "-" + stop.substring(DAY_START, DAY_END);
+	public String getStop() {
+		return this.stop;
+	}
 
-		// consider December - January (different years)
-		if (isNewYear()) {
-			startDay = (thisYear - SINGLE) + "-" + start.substring(MONTH_START, MONTH_END);
-			startDay += "-" + start.substring(DAY_START, DAY_END);
-		}
+	/**
+	 * Is this a multi-day charge?
+	 * 
+	 * @return true if this is a multi-day charge
+	 */
+	public boolean isMulti() {
+		return this.multi;
+	}
 
-		int days = 0;
+	/**
+	 * Gets the year of the stop date.
+	 * 
+	 * @return the reference year of the charge
+	 */
+	public int getYear() {
+		return this.year;
+	}
 
-		LocalDate day1 = LocalDate.parse(startDay);
-		LocalDate day2 = LocalDate.parse(stopDay);
+	/**
+	 * Gets the time zone the minutes were counted in.
+	 * 
+	 * @return the time zone, or null for the wall clock
+	 */
+	public ZoneId getZone() {
+		return this.result.getZone();
+	}
 
-		while (day1.compareTo(day2) <= 0) {
-			days++;
-			day1 = day1.plusDays(1);
+	/**
+	 * Gets the calculated charges.
+	 * 
+	 * @return the calculated charges as a string
+	 */
+	public String getCharges() {
+		// a String is safe to publish, so racing threads at worst format it twice
+		String text = this.charges;
+		if (text == null) {
+			text = ChargeReport.render(this, ChargeReport.Format.TEXT);
+			this.charges = text;
 		}
-
-		return days;
+		return text;
 	}
 
-	/*
-	 * Returns the number of minutes between the start and stop times
+	/**
+	 * Gets the calculated minutes as numbers, without formatting any text.
+	 * 
+	 * @return the calculated result
 	 */
-	private long numberOfMinutes(String start, String stop) {
-
-		SimpleDateFormat format = new SimpleDateFormat(TIME_FORMAT);
-
-		Date d1;
-		Date d2;
-
-		try {
-			d1 = format.parse(start);
-			d2 = format.parse(stop);
-
-			long diffMs = d2.getTime() - d1.getTime();
-			long diffSec = diffMs / MILLS_PER_SEC;
-			long diffMin = diffSec / MIN_PER_HOUR;
-
-			return diffMin;
-
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
+	public ChargeResult getResult() {
+		return this.result;
+	}
 
-		return 0;
+	/**
+	 * Gets the total number of minutes between the start and stop days and
+	 * times.
+	 * 
+	 * @return the total number of minutes of charges
+	 */
+	public long getTotalMinutes() {
+		return this.result.getTotalMinutes();
 	}
 
-	/*
-	 * Is the entry formatted properly?
+	/**
+	 * Gets the number of calendar days charged, counting both the start and stop
+	 * days.
+	 * 
+	 * @return the number of days of charges
 	 */
-	private boolean isProperFormat(String entry) {
-		if (!entry.isEmpty() && entry.length() == PROPER_ENTRY) {
-			for (int i = 0; i < DAY_END; i++) {
-				if (!Character.isDigit(entry.charAt(i))) {
-					return false;
-				}
-			}
+	public int getNumberOfDays() {
+		return this.result.getNumberOfDays();
+	}
 
-			for (int i = TIME_START; i < entry.length(); i++) {
-				if (!Character.isDigit(entry.charAt(i))) {
-					return false;
-				}
-			}
+	/**
+	 * Gets the start as minutes since 1970-01-01 00:00 on the wall clock.
+	 * 
+	 * @return the start in epoch minutes
+	 */
+	public long getStartEpochMinute() {
+		return this.result.getStartEpochMinute();
+	}
 
-			return true;
-		}
-		return false;
+	/**
+	 * Gets the stop as minutes since 1970-01-01 00:00 on the wall clock.
+	 * 
+	 * @return the stop in epoch minutes
+	 */
+	public long getStopEpochMinute() {
+		return this.result.getStopEpochMinute();
 	}
 
-	/*
-	 * Is this an overlapping year (Dec - Jan)?
+	/**
+	 * Gets the minutes charged on each day, first day first. The days are only
+	 * worked out as they are iterated.
+	 * 
+	 * @return the minutes for each day of charges
 	 */
-	private boolean isNewYear() {
-		if (this.start.substring(MONTH_START, MONTH_END).equals(DEC) && 
-				this.stop.substring(MONTH_START, MONTH_END).equals(JAN)) {
-			return true;
-		}
-		return false;
+	public DailyMinutes getDailyMinutes() {
+		return this.result.getDailyMinutes();
 	}
 
-	/*
-	 * Was last year a leap year?
+	/**
+	 * Is the given object a ChargeTime with the same start, stop, multi-day
+	 * flag, year and time zone?
+	 * 
+	 * @param obj
+	 *            the object to compare
+	 * @return true if the charges are for the same case
 	 */
-	private boolean wasLeapYear() {
-		int lastYear = LocalDate.now().getYear() - SINGLE;
-		if ((lastYear % HUNDREDS_BY_FOUR == 0) 
-				|| ((lastYear % ONES_BY_FOUR == 0) && (lastYear % HUNDREDS != 0))) {
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
 			return true;
 		}
-		return false;
+		if (!(obj instanceof ChargeTime)) {
+			return false;
+		}
+		ChargeTime other = (ChargeTime) obj;
+		return this.multi == other.multi && this.year == other.year && this.start.equals(other.start)
+				&& this.stop.equals(other.stop) && Objects.equals(getZone(), other.getZone());
 	}
-	
-	/*
-	 * Split the minutes that are > 999 to minutes plus 999
-	 * for entering charges into ChargeMaster.
+
+	/**
+	 * Gets a hash code from the start, stop, multi-day flag, year and time zone.
+	 * 
+	 * @return the hash code
 	 */
-	private String splitMins(long totalMins) {
-		String properMins;
-		if (totalMins > MAX_MINS) {
-			properMins = "" + MAX_MINS + " + " + (totalMins - MAX_MINS) + " (" + totalMins + ")";
-		} else {
-			properMins = "" + totalMins;
-		}
-		return properMins;
+	@Override
+	public int hashCode() {
+		int hash = this.start.hashCode();
+		hash = 31 * hash + this.stop.hashCode();
+		hash = 31 * hash + (this.multi ? 1 : 0);
+		hash = 31 * hash + this.year;
+		return 31 * hash + Objects.hashCode(getZone());
 	}
-	
+
 	/*
-	 * Rounds to the nearest given digits after the decimal
+	 * Formats a wall clock minute in the form of "yyyyMMdd HHmm".
 	 */
-	private double round(double value, int numberOfDigitsAfterDecimalPoint) {
-	    BigDecimal bigDecimal = new BigDecimal(value);
-	    bigDecimal = bigDecimal.setScale(numberOfDigitsAfterDecimalPoint, BigDecimal.ROUND_HALF_UP);
-	    return bigDecimal.doubleValue();
+	private static String formatMinute(long epochMinute) {
+		if (epochMinute < FIRST_MINUTE || epochMinute >= END_MINUTE) {
+			throw new IllegalArgumentException("Invalid calculation in date/times");
+		}
+		return ChargeCalculator.formatDateTime(epochMinute);
 	}
 }
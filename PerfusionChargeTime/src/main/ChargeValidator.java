@@ -0,0 +1,353 @@
+package main;
+
+import java.nio.ByteBuffer;
+
+/**
+ * ChargeValidator checks entries before any date arithmetic is done on them.
+ * The month, day, hour and minute of an entry are each looked up in a small
+ * table of the values they may take, and the first that is out of range is
+ * returned as a ChargeError, or null if the entry is valid. Nothing is thrown
+ * and nothing is created, so a file full of bad rows costs no more to check
+ * than a file of good ones; only the callers that have to stop on a bad entry
+ * (the ChargeTime constructor) turn the error into an exception.
+ *
+ * The multi-day flag (true/false, yes/no, y/n, 1/0, blank for false) is read
+ * here too, from text or from ASCII bytes.
+ *
+ * @author Kimberle McGill
+ * @version 1.2.261018
+ */
+public final class ChargeValidator {
+
+	/** Value returned for a multi-day flag that is true */
+	public static final int MULTI_DAY = 1;
+	/** Value returned for a multi-day flag that is false */
+	public static final int SINGLE_DAY = 0;
+
+	/* Ranges each two digit value is within, by value */
+	private final static byte[] RANGES = new byte[1 << 8];
+	/* Most days of each month in any year, by month, 0 for no month */
+	private final static byte[] MOST_DAYS = new byte[1 << 8];
+	/* Range bit of a month (01-12) */
+	private final static int MONTH_RANGE = 1;
+	/* Range bit of an hour (00-23) */
+	private final static int HOUR_RANGE = 2;
+	/* Range bit of a minute (00-59) */
+	private final static int MINUTE_RANGE = 4;
+	/* Number of months in a year */
+	private final static int MONTHS_IN_YEAR = 12;
+	/* Number of hours in a day */
+	private final static int HOURS_PER_DAY = 24;
+	/* Number of minutes in an hour */
+	private final static int MIN_PER_HOUR = 60;
+	/* Most days of each month, in a leap year */
+	private final static int[] DAYS_IN_MONTH = { 31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+	/* Length of a date or time field, "MMdd" or "HHmm" */
+	private final static int FIELD_LENGTH = 4;
+	/* Length of an entry with its year, "yyyyMMdd HHmm" */
+	private final static int DATE_TIME_LENGTH = 13;
+	/* Number of years in a century */
+	private final static int CENTURY = 100;
+	/* Index of the month digits in an entry with its year */
+	private final static int MONTH_AT = 4;
+	/* Index of the day digits in an entry with its year */
+	private final static int DAY_AT = 6;
+	/* Index of the hour digits in an entry with its year */
+	private final static int HOUR_AT = 9;
+	/* Index of the minute digits in an entry with its year */
+	private final static int MINUTE_AT = 11;
+
+	static {
+		for (int value = 0; value < HOURS_PER_DAY; value++) {
+			RANGES[value] |= HOUR_RANGE;
+		}
+		for (int value = 0; value < MIN_PER_HOUR; value++) {
+			RANGES[value] |= MINUTE_RANGE;
+		}
+		for (int month = 1; month <= MONTHS_IN_YEAR; month++) {
+			RANGES[month] |= MONTH_RANGE;
+			MOST_DAYS[month] = (byte) DAYS_IN_MONTH[month - 1];
+		}
+	}
+
+	/*
+	 * All static, never constructed.
+	 */
+	private ChargeValidator() {
+	}
+
+	/**
+	 * Checks the ranges of a packed entry (see ChargeCalculator). The day is
+	 * checked against the longest its month can be, so February 29 passes; use
+	 * check to test the dates in their years.
+	 *
+	 * @param entry
+	 *            the packed entry, or ChargeCalculator.INVALID
+	 * @return the first field out of range, FORMAT for INVALID, or null if the
+	 *         entry is valid
+	 */
+	public static ChargeError checkEntry(int entry) {
+		if (entry == ChargeCalculator.INVALID) {
+			return ChargeError.FORMAT;
+		}
+		return checkFields(ChargeCalculator.month(entry), ChargeCalculator.day(entry), ChargeCalculator.hour(entry),
+				ChargeCalculator.minute(entry));
+	}
+
+	/**
+	 * Checks a case of two packed entries as ChargeCalculator.calculate will
+	 * see it: both entries in range, each date a date of its year (a multi-day
+	 * charge whose start month is after its stop month starts in the year
+	 * before), and a multi-day charge within one month stopping after it starts.
+	 *
+	 * @param start
+	 *            the packed start, or ChargeCalculator.INVALID
+	 * @param stop
+	 *            the packed stop, or ChargeCalculator.INVALID
+	 * @param multi
+	 *            whether this is a multi-day charge
+	 * @param year
+	 *            the year of the stop date
+	 * @return the first error found, or null if the case can be calculated
+	 */
+	public static ChargeError check(int start, int stop, boolean multi, int year) {
+		ChargeError error = checkEntry(start);
+		if (error == null) {
+			error = checkEntry(stop);
+		}
+		if (error != null) {
+			return error;
+		}
+		int startMonth = ChargeCalculator.month(start);
+		int startDay = ChargeCalculator.day(start);
+		int stopMonth = ChargeCalculator.month(stop);
+		int stopDay = ChargeCalculator.day(stop);
+		int startYear = year;
+		if (multi && startMonth > stopMonth) {
+			startYear = year - 1;
+		} else if (multi && startMonth == stopMonth && start > stop) {
+			return ChargeError.ORDER;
+		}
+		if (!CalendarYear.of(startYear).isDate(startMonth, startDay)
+				|| !CalendarYear.of(year).isDate(stopMonth, stopDay)) {
+			return ChargeError.DAY;
+		}
+		return null;
+	}
+
+	/**
+	 * Checks an entry in the form of "yyyyMMdd HHmm". The character between the
+	 * date and the time is not checked.
+	 *
+	 * @param entry
+	 *            the date and time in the form of "yyyyMMdd HHmm"
+	 * @return the first error found, or null if the entry is a date and time
+	 */
+	public static ChargeError checkDateTime(CharSequence entry) {
+		if (entry == null || entry.length() != DATE_TIME_LENGTH) {
+			return ChargeError.FORMAT;
+		}
+		return checkDateTime(twoDigits(entry, 0), twoDigits(entry, 2), twoDigits(entry, MONTH_AT),
+				twoDigits(entry, DAY_AT), twoDigits(entry, HOUR_AT), twoDigits(entry, MINUTE_AT));
+	}
+
+	/**
+	 * Checks an entry in the form of "yyyyMMdd HHmm" in ASCII bytes, without
+	 * making a String. The buffer's position is not changed.
+	 *
+	 * @param bytes
+	 *            the buffer holding the entry
+	 * @param index
+	 *            index of the first byte of the entry
+	 * @param length
+	 *            number of bytes in the entry
+	 * @return the first error found, or null if the entry is a date and time
+	 */
+	public static ChargeError checkDateTime(ByteBuffer bytes, int index, int length) {
+		if (length != DATE_TIME_LENGTH) {
+			return ChargeError.FORMAT;
+		}
+		return checkDateTime(twoDigits(bytes, index), twoDigits(bytes, index + 2),
+				twoDigits(bytes, index + MONTH_AT), twoDigits(bytes, index + DAY_AT),
+				twoDigits(bytes, index + HOUR_AT), twoDigits(bytes, index + MINUTE_AT));
+	}
+
+	/**
+	 * Checks that a charge between two wall clock minutes can be counted in
+	 * minutes.
+	 *
+	 * @param startMinute
+	 *            the start in minutes since 1970-01-01 00:00
+	 * @param stopMinute
+	 *            the stop in minutes since 1970-01-01 00:00
+	 * @return SPAN if the charge is too long, or null
+	 */
+	public static ChargeError checkSpan(long startMinute, long stopMinute) {
+		long total = stopMinute - startMinute;
+		if (startMinute == ChargeCalculator.INVALID_MINUTE || stopMinute == ChargeCalculator.INVALID_MINUTE
+				|| total != (int) total) {
+			return ChargeError.SPAN;
+		}
+		return null;
+	}
+
+	/**
+	 * Checks a date field in the form of "MMdd". February 29 passes.
+	 *
+	 * @param date
+	 *            the date
+	 * @return the first error found, or null if the date is valid
+	 */
+	public static ChargeError checkDate(CharSequence date) {
+		if (date == null || date.length() != FIELD_LENGTH) {
+			return ChargeError.FORMAT;
+		}
+		int month = twoDigits(date, 0);
+		int day = twoDigits(date, 2);
+		if ((month | day) < 0) {
+			return ChargeError.FORMAT;
+		}
+		return checkFields(month, day, 0, 0);
+	}
+
+	/**
+	 * Checks a time field in the form of "HHmm".
+	 *
+	 * @param time
+	 *            the time
+	 * @return the first error found, or null if the time is valid
+	 */
+	public static ChargeError checkTime(CharSequence time) {
+		if (time == null || time.length() != FIELD_LENGTH) {
+			return ChargeError.FORMAT;
+		}
+		int hour = twoDigits(time, 0);
+		int minute = twoDigits(time, 2);
+		if ((hour | minute) < 0) {
+			return ChargeError.FORMAT;
+		}
+		return checkFields(1, 1, hour, minute);
+	}
+
+	/**
+	 * Reads a multi-day flag: true, yes, y or 1 for a multi-day charge, and
+	 * false, no, n, 0 or blank for a single day, in any case.
+	 *
+	 * @param flag
+	 *            the trimmed flag
+	 * @return MULTI_DAY, SINGLE_DAY or ChargeCalculator.INVALID
+	 */
+	public static int parseMulti(CharSequence flag) {
+		if (flag.length() == 0 || matches(flag, "false") || matches(flag, "no") || matches(flag, "n")
+				|| matches(flag, "0")) {
+			return SINGLE_DAY;
+		}
+		if (matches(flag, "true") || matches(flag, "yes") || matches(flag, "y") || matches(flag, "1")) {
+			return MULTI_DAY;
+		}
+		return ChargeCalculator.INVALID;
+	}
+
+	/**
+	 * Reads a multi-day flag from ASCII bytes, without making a String. The
+	 * buffer's position is not changed.
+	 *
+	 * @param bytes
+	 *            the buffer holding the flag
+	 * @param start
+	 *            index of the first byte of the trimmed flag
+	 * @param end
+	 *            index after the last byte of the trimmed flag
+	 * @return MULTI_DAY, SINGLE_DAY or ChargeCalculator.INVALID
+	 */
+	public static int parseMulti(ByteBuffer bytes, int start, int end) {
+		if (start == end || matches(bytes, start, end, "false") || matches(bytes, start, end, "no")
+				|| matches(bytes, start, end, "n") || matches(bytes, start, end, "0")) {
+			return SINGLE_DAY;
+		}
+		if (matches(bytes, start, end, "true") || matches(bytes, start, end, "yes")
+				|| matches(bytes, start, end, "y") || matches(bytes, start, end, "1")) {
+			return MULTI_DAY;
+		}
+		return ChargeCalculator.INVALID;
+	}
+
+	/*
+	 * Checks the ranges of a month, day, hour and minute of 0 to 255.
+	 */
+	private static ChargeError checkFields(int month, int day, int hour, int minute) {
+		if ((RANGES[month] & MONTH_RANGE) == 0) {
+			return ChargeError.MONTH;
+		}
+		if (day == 0 || day > MOST_DAYS[month]) {
+			return ChargeError.DAY;
+		}
+		if ((RANGES[hour] & HOUR_RANGE) == 0) {
+			return ChargeError.HOUR;
+		}
+		if ((RANGES[minute] & MINUTE_RANGE) == 0) {
+			return ChargeError.MINUTE;
+		}
+		return null;
+	}
+
+	/*
+	 * Checks the two digit fields of an entry with its year, any of which is
+	 * negative if it was not digits.
+	 */
+	private static ChargeError checkDateTime(int century, int yearOfCentury, int month, int day, int hour,
+			int minute) {
+		if ((century | yearOfCentury | month | day | hour | minute) < 0) {
+			return ChargeError.FORMAT;
+		}
+		ChargeError error = checkFields(month, day, hour, minute);
+		if (error == null && !CalendarYear.of(century * CENTURY + yearOfCentury).isDate(month, day)) {
+			error = ChargeError.DAY;
+		}
+		return error;
+	}
+
+	/*
+	 * Reads two decimal digits from text, or returns a negative number.
+	 */
+	private static int twoDigits(CharSequence text, int index) {
+		return ChargeCalculator.twoDigits(text.charAt(index), text.charAt(index + 1));
+	}
+
+	/*
+	 * Reads two decimal digits from ASCII bytes, or returns a negative number.
+	 */
+	private static int twoDigits(ByteBuffer bytes, int index) {
+		return ChargeCalculator.twoDigits(bytes.get(index), bytes.get(index + 1));
+	}
+
+	/*
+	 * Does the text match the given lower case word, ignoring case?
+	 */
+	private static boolean matches(CharSequence text, String word) {
+		if (text.length() != word.length()) {
+			return false;
+		}
+		for (int i = 0; i < word.length(); i++) {
+			if (Character.toLowerCase(text.charAt(i)) != word.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Do the bytes match the given lower case word, ignoring case?
+	 */
+	private static boolean matches(ByteBuffer bytes, int start, int end, String word) {
+		if (end - start != word.length()) {
+			return false;
+		}
+		for (int i = 0; i < word.length(); i++) {
+			if ((bytes.get(start + i) | 0x20) != word.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,129 @@
+package main;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * DailyMinutes walks the per-day breakdown of a calculated charge one day at a
+ * time. Nothing is worked out until a day is asked for, and each step only
+ * moves one day forward in a CalendarYear table, so a breakdown that is never
+ * iterated costs nothing and labeling a day is an array lookup.
+ *
+ * @author Kimberle McGill
+ * @version 1.2.261018
+ */
+public final class DailyMinutes implements PrimitiveIterator.OfInt {
+
+	/* Result being walked */
+	private final int[] result;
+	/* Offsets of the time zone of the result, null for the wall clock */
+	private final ZoneOffsets zone;
+	/* Index of the next day */
+	private int dayIndex;
+	/* Calendar of the next day */
+	private CalendarYear calendar;
+	/* Zero based day of the year of the next day */
+	private int dayOfYear;
+	/* Calendar of the day last returned */
+	private CalendarYear lastCalendar;
+	/* Zero based day of the year of the day last returned */
+	private int lastDayOfYear;
+
+	/**
+	 * Constructs a new DailyMinutes for a result filled in by
+	 * ChargeCalculator.calculate.
+	 *
+	 * @param result
+	 *            the calculated result
+	 */
+	public DailyMinutes(int[] result) {
+		this(result, null);
+	}
+
+	/**
+	 * Constructs a new DailyMinutes for a result filled in by
+	 * ChargeCalculator.calculate in the given time zone.
+	 *
+	 * @param result
+	 *            the calculated result
+	 * @param zone
+	 *            offsets of the time zone, or null for the wall clock
+	 */
+	public DailyMinutes(int[] result, ZoneOffsets zone) {
+		this.result = result;
+		this.zone = zone;
+		this.calendar = CalendarYear.of(result[ChargeCalculator.START_YEAR]);
+		this.dayOfYear = result[ChargeCalculator.START_EPOCH_DAY] - this.calendar.firstEpochDay();
+	}
+
+	/**
+	 * Are there more days in the breakdown?
+	 *
+	 * @return true if there is another day
+	 */
+	@Override
+	public boolean hasNext() {
+		return this.dayIndex < this.result[ChargeCalculator.NUMBER_OF_DAYS];
+	}
+
+	/**
+	 * Gets the minutes charged on the next day and moves to the day after.
+	 *
+	 * @return the minutes charged on the next day
+	 */
+	@Override
+	public int nextInt() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		int minutes = ChargeCalculator.minutesOnDay(this.result, this.dayIndex, this.zone);
+		this.lastCalendar = this.calendar;
+		this.lastDayOfYear = this.dayOfYear;
+
+		// move to next day
+		this.dayIndex++;
+		this.dayOfYear++;
+		if (this.dayOfYear == this.calendar.lengthOfYear()) {
+			this.calendar = CalendarYear.of(this.calendar.getYear() + 1);
+			this.dayOfYear = 0;
+		}
+		return minutes;
+	}
+
+	/**
+	 * Gets the year of the day last returned by nextInt.
+	 *
+	 * @return the year of the day
+	 */
+	public int getYear() {
+		return this.lastCalendar.getYear();
+	}
+
+	/**
+	 * Gets the month (1-12) of the day last returned by nextInt.
+	 *
+	 * @return the month of the day
+	 */
+	public int getMonth() {
+		return this.lastCalendar.month(this.lastDayOfYear);
+	}
+
+	/**
+	 * Gets the day of the month of the day last returned by nextInt.
+	 *
+	 * @return the day of the month
+	 */
+	public int getDayOfMonth() {
+		return this.lastCalendar.dayOfMonth(this.lastDayOfYear);
+	}
+
+	/**
+	 * Gets the "Month d" label (for example "March 10") of the day last returned
+	 * by nextInt.
+	 *
+	 * @return the label of the day
+	 */
+	public String getLabel() {
+		return this.lastCalendar.label(this.lastDayOfYear);
+	}
+}
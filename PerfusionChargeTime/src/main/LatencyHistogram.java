@@ -0,0 +1,155 @@
+package main;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram counts recorded times in nanoseconds in log-linear buckets:
+ * every power of two is split into 32 equal buckets, so any percentile is
+ * within about 3% of the recorded value whatever its size, and the histogram
+ * is a fixed array of counters. Recording is an index calculation and one
+ * atomic increment, with no locks or allocation, and may be done from any
+ * number of threads.
+ *
+ * @author Kimberle McGill
+ * @version 1.2.261018
+ */
+public final class LatencyHistogram {
+
+	/* Count of each bucket */
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	/* Number of recorded values */
+	private final LongAdder count = new LongAdder();
+	/* Sum of the recorded values */
+	private final LongAdder sum = new LongAdder();
+	/* Largest recorded value */
+	private final AtomicLong max = new AtomicLong();
+	/* Bits of each power of two kept in a bucket index */
+	private final static int SUB_BITS = 5;
+	/* Buckets in each power of two */
+	private final static int SUB_BUCKETS = 1 << SUB_BITS;
+	/* Number of buckets, enough for any positive long */
+	private final static int BUCKETS = SUB_BUCKETS * (Long.SIZE - SUB_BITS);
+	/* Number of percent in the whole */
+	private final static double PERCENT = 100.0;
+
+	/**
+	 * Records one value. Negative values are recorded as 0.
+	 *
+	 * @param nanos
+	 *            the time in nanoseconds
+	 */
+	public void record(long nanos) {
+		long value = Math.max(nanos, 0);
+		this.counts.incrementAndGet(bucket(value));
+		this.count.increment();
+		this.sum.add(value);
+		long largest = this.max.get();
+		while (value > largest && !this.max.compareAndSet(largest, value)) {
+			largest = this.max.get();
+		}
+	}
+
+	/**
+	 * Gets the number of recorded values.
+	 *
+	 * @return the number of values
+	 */
+	public long getCount() {
+		return this.count.sum();
+	}
+
+	/**
+	 * Gets the mean of the recorded values.
+	 *
+	 * @return the mean in nanoseconds, 0 if nothing is recorded
+	 */
+	public double getMean() {
+		long n = getCount();
+		return n == 0 ? 0.0 : (double) this.sum.sum() / n;
+	}
+
+	/**
+	 * Gets the largest recorded value.
+	 *
+	 * @return the largest value in nanoseconds
+	 */
+	public long getMax() {
+		return this.max.get();
+	}
+
+	/**
+	 * Gets the value at or below which the given percent of the recorded values
+	 * fall, as the top of the bucket holding it.
+	 *
+	 * @param percentile
+	 *            the percent, from 0 to 100
+	 * @return the value in nanoseconds, 0 if nothing is recorded
+	 */
+	public long getPercentile(double percentile) {
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			total += this.counts.get(i);
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(total * Math.min(percentile, PERCENT) / PERCENT));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += this.counts.get(i);
+			if (seen >= rank) {
+				return Math.min(highestInBucket(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * Removes every recorded value.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			this.counts.set(i, 0);
+		}
+		this.count.reset();
+		this.sum.reset();
+		this.max.set(0);
+	}
+
+	/**
+	 * Returns the count, mean, median, 99th percentile and largest value, in
+	 * microseconds, as a single line of text.
+	 *
+	 * @return the summary of the histogram
+	 */
+	@Override
+	public String toString() {
+		return String.format("count %d, mean %.2f us, p50 %.2f us, p99 %.2f us, max %.2f us", getCount(),
+				getMean() / 1e3, getPercentile(50) / 1e3, getPercentile(99) / 1e3, getMax() / 1e3);
+	}
+
+	/*
+	 * Returns the bucket of a value that is not negative.
+	 */
+	private static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return SUB_BUCKETS * (shift + 1) + (int) ((value >>> shift) - SUB_BUCKETS);
+	}
+
+	/*
+	 * Returns the largest value that falls in a bucket.
+	 */
+	private static long highestInBucket(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long sub = bucket % SUB_BUCKETS + SUB_BUCKETS;
+		return ((sub + 1) << shift) - 1;
+	}
+}
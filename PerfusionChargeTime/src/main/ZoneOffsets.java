@@ -0,0 +1,197 @@
+package main;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * ZoneOffsets is a precomputed table of the UTC offsets of one time zone,
+ * looked up by wall clock minute (minutes since 1970-01-01 00:00 on the local
+ * clock). The offset at the start of each year and every transition in it
+ * (daylight saving time starting or ending) are read from the zone rules once
+ * per year into a small int array, so finding the offset of a minute is a
+ * CalendarYear lookup and a scan of one or two transitions, with nothing
+ * created.
+ *
+ * A wall clock time that is skipped when the clocks go forward, or repeated
+ * when they go back, takes the offset from before the transition, as
+ * ZonedDateTime does: 02:30 on the morning the clocks go forward is an hour
+ * after 01:30, and 01:30 on the morning they go back is the first 01:30.
+ *
+ * Tables are immutable, and the tables for 0 through 10000 are built on first
+ * use per zone and shared.
+ *
+ * @author Kimberle McGill
+ * @version 1.2.261018
+ */
+public final class ZoneOffsets {
+
+	/* The time zone */
+	private final ZoneId zone;
+	/* Rules of the time zone */
+	private final ZoneRules rules;
+	/* Offsets of each year from FIRST_CACHED, built on first use */
+	private final AtomicReferenceArray<int[]> years = new AtomicReferenceArray<int[]>(CACHED_YEARS);
+	/* Shared tables, by zone */
+	private final static ConcurrentMap<ZoneId, ZoneOffsets> ZONES = new ConcurrentHashMap<ZoneId, ZoneOffsets>();
+	/* First year kept in the tables */
+	private final static int FIRST_CACHED = 0;
+	/* Number of years kept in the tables, through 10000 */
+	private final static int CACHED_YEARS = 10001;
+	/* Number of seconds in a minute */
+	private final static int SEC_PER_MIN = 60;
+	/* Number of minutes in a day */
+	private final static int MIN_PER_DAY = 1440;
+	/* Length of a year's offsets with two transitions */
+	private final static int INITIAL_LENGTH = 5;
+
+	/*
+	 * Constructs the table of the given zone, with no years built.
+	 */
+	private ZoneOffsets(ZoneId zone) {
+		this.zone = zone;
+		this.rules = zone.getRules();
+	}
+
+	/**
+	 * Gets the table of the given time zone.
+	 *
+	 * @param zone
+	 *            the time zone
+	 * @return the table of the zone
+	 */
+	public static ZoneOffsets of(ZoneId zone) {
+		ZoneOffsets table = ZONES.get(zone);
+		if (table == null) {
+			ZONES.putIfAbsent(zone, new ZoneOffsets(zone));
+			table = ZONES.get(zone);
+		}
+		return table;
+	}
+
+	/**
+	 * Gets the time zone of the table.
+	 *
+	 * @return the time zone
+	 */
+	public ZoneId getZone() {
+		return this.zone;
+	}
+
+	/**
+	 * Gets the UTC offset in force at a wall clock minute.
+	 *
+	 * @param wallMinute
+	 *            minutes since 1970-01-01 00:00 on the local clock
+	 * @return the offset in minutes, positive east of Greenwich
+	 */
+	public int offsetAt(long wallMinute) {
+		int epochDay = (int) Math.floorDiv(wallMinute, MIN_PER_DAY);
+		CalendarYear calendar = CalendarYear.of(CalendarYear.yearOf(epochDay));
+		int[] offsets = offsetsOf(calendar.getYear());
+		long minuteOfYear = wallMinute - (long) calendar.firstEpochDay() * MIN_PER_DAY;
+
+		// the offset at January 1, then each transition the minute is at or past
+		int offset = offsets[0];
+		for (int i = 1; i < offsets.length && minuteOfYear >= offsets[i]; i += 2) {
+			offset = offsets[i + 1];
+		}
+		return offset;
+	}
+
+	/**
+	 * Gets the minutes that actually pass between two wall clock minutes, less
+	 * an hour across the night the clocks go forward and more an hour across
+	 * the night they go back.
+	 *
+	 * @param fromWallMinute
+	 *            the earlier wall clock minute
+	 * @param toWallMinute
+	 *            the later wall clock minute
+	 * @return the elapsed minutes
+	 */
+	public long minutesBetween(long fromWallMinute, long toWallMinute) {
+		return toWallMinute - fromWallMinute - (offsetAt(toWallMinute) - offsetAt(fromWallMinute));
+	}
+
+	/**
+	 * Gets the number of minutes in a calendar day: 1440, or 1380 and 1500 on
+	 * the days the clocks go forward and back an hour.
+	 *
+	 * @param epochDay
+	 *            days since 1970-01-01
+	 * @return the minutes in the day
+	 */
+	public int lengthOfDay(int epochDay) {
+		long midnight = (long) epochDay * MIN_PER_DAY;
+		return (int) minutesBetween(midnight, midnight + MIN_PER_DAY);
+	}
+
+	/**
+	 * Returns the zone of the table.
+	 *
+	 * @return the zone id
+	 */
+	@Override
+	public String toString() {
+		return this.zone.getId();
+	}
+
+	/*
+	 * Gets the offsets of a year: the offset at January 1 00:00, then the minute
+	 * of the year from which each transition applies and the offset after it.
+	 */
+	private int[] offsetsOf(int year) {
+		int index = year - FIRST_CACHED;
+		if (index < 0 || index >= CACHED_YEARS) {
+			return buildOffsets(year);
+		}
+		int[] offsets = this.years.get(index);
+		if (offsets == null) {
+			this.years.compareAndSet(index, null, buildOffsets(year));
+			offsets = this.years.get(index);
+		}
+		return offsets;
+	}
+
+	/*
+	 * Reads the offsets of a year from the zone rules.
+	 */
+	private int[] buildOffsets(int year) {
+		long firstWall = (long) CalendarYear.of(year).firstEpochDay() * MIN_PER_DAY;
+		long nextWall = (long) CalendarYear.of(year + 1).firstEpochDay() * MIN_PER_DAY;
+		int first = this.rules.getOffset(Instant.ofEpochSecond((firstWall - MIN_PER_DAY) * SEC_PER_MIN))
+				.getTotalSeconds() / SEC_PER_MIN;
+
+		// transitions from a day before the year to a day after, by wall clock
+		int[] offsets = new int[INITIAL_LENGTH];
+		offsets[0] = first;
+		int count = 1;
+		ZoneOffsetTransition transition = this.rules
+				.nextTransition(Instant.ofEpochSecond((firstWall - 2 * MIN_PER_DAY) * SEC_PER_MIN));
+		while (transition != null && transition.toEpochSecond() / SEC_PER_MIN < nextWall + MIN_PER_DAY) {
+			int beforeOffset = transition.getOffsetBefore().getTotalSeconds() / SEC_PER_MIN;
+			int afterOffset = transition.getOffsetAfter().getTotalSeconds() / SEC_PER_MIN;
+			long instant = transition.toEpochSecond() / SEC_PER_MIN;
+
+			// skipped or repeated wall times keep the offset from before
+			long applies = instant + Math.max(beforeOffset, afterOffset) - firstWall;
+			if (applies <= 0) {
+				offsets[0] = afterOffset;
+			} else {
+				if (count + 2 > offsets.length) {
+					offsets = Arrays.copyOf(offsets, offsets.length * 2 + 1);
+				}
+				offsets[count++] = (int) applies;
+				offsets[count++] = afterOffset;
+			}
+			transition = this.rules.nextTransition(transition.getInstant());
+		}
+		return count == offsets.length ? offsets : Arrays.copyOf(offsets, count);
+	}
+}
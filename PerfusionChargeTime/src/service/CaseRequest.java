@@ -0,0 +1,269 @@
+package service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CaseRequest holds one case sent to the charge service: the start and stop
+ * dates and times ("MMdd HHmm"), the multi-day flag and an optional year of
+ * the stop date. Also reads a JSON array of cases for the bulk endpoint.
+ *
+ * @author Kimberle McGill
+ * @version 1.2.261018
+ */
+class CaseRequest {
+
+	/* Start date and time */
+	final String start;
+	/* Stop date and time */
+	final String stop;
+	/* Is this a multi-day charge? */
+	final boolean multi;
+	/* Year of the stop date, or 0 for this year */
+	final int year;
+
+	/**
+	 * Constructs a new CaseRequest.
+	 *
+	 * @param start
+	 *            the starting date and time in the format of "MMdd HHmm"
+	 * @param stop
+	 *            the stopping date and time in the format of "MMdd HHmm"
+	 * @param multi
+	 *            whether this is a multi-day charge
+	 * @param year
+	 *            the year of the stop date, or 0 for this year
+	 */
+	CaseRequest(String start, String stop, boolean multi, int year) {
+		this.start = start;
+		this.stop = stop;
+		this.multi = multi;
+		this.year = year;
+	}
+
+	/**
+	 * Reads a JSON array of case objects, each with "start", "stop" and
+	 * optionally "multi" and "year" members. Other members are ignored,
+	 * whatever their values, including objects and arrays.
+	 *
+	 * @param json
+	 *            the JSON text
+	 * @return the cases, in the order given
+	 * @throws IllegalArgumentException
+	 *             if the text is not an array of case objects
+	 */
+	static List<CaseRequest> parseArray(String json) {
+		Parser parser = new Parser(json);
+		List<CaseRequest> cases = new ArrayList<CaseRequest>();
+		parser.expect('[');
+		if (!parser.skip(']')) {
+			do {
+				cases.add(parser.readCase());
+			} while (parser.skip(','));
+			parser.expect(']');
+		}
+		parser.end();
+		return cases;
+	}
+
+	/*
+	 * Reads just enough JSON for arrays of case objects.
+	 */
+	private static class Parser {
+
+		/* Text being read */
+		private final String text;
+		/* Index of the next character */
+		private int at;
+		/* Deepest nesting of objects and arrays skipped */
+		private final static int MAX_DEPTH = 64;
+
+		/*
+		 * Constructs a parser at the start of the text.
+		 */
+		Parser(String text) {
+			this.text = text;
+		}
+
+		/*
+		 * Reads one case object.
+		 */
+		CaseRequest readCase() {
+			String start = null;
+			String stop = null;
+			boolean multi = false;
+			int year = 0;
+			expect('{');
+			if (!skip('}')) {
+				do {
+					String name = readString();
+					expect(':');
+					if (name.equals("start")) {
+						start = readString();
+					} else if (name.equals("stop")) {
+						stop = readString();
+					} else if (name.equals("multi")) {
+						multi = readBoolean();
+					} else if (name.equals("year")) {
+						year = readInt();
+					} else {
+						skipValue(0);
+					}
+				} while (skip(','));
+				expect('}');
+			}
+			if (start == null || stop == null) {
+				throw new IllegalArgumentException("Each case needs a start and a stop");
+			}
+			return new CaseRequest(start, stop, multi, year);
+		}
+
+		/*
+		 * Reads a string value, handling the common escapes.
+		 */
+		String readString() {
+			expect('"');
+			StringBuilder value = new StringBuilder();
+			while (at < text.length()) {
+				char c = text.charAt(at++);
+				if (c == '"') {
+					return value.toString();
+				}
+				if (c == '\\' && at < text.length()) {
+					char escaped = text.charAt(at++);
+					if (escaped == 'u' && at + 4 <= text.length()) {
+						value.append((char) Integer.parseInt(text.substring(at, at + 4), 16));
+						at += 4;
+					} else if (escaped == 'n') {
+						value.append('\n');
+					} else if (escaped == 't') {
+						value.append('\t');
+					} else {
+						value.append(escaped);
+					}
+				} else {
+					value.append(c);
+				}
+			}
+			throw new IllegalArgumentException("Unterminated string in JSON");
+		}
+
+		/*
+		 * Reads true or false.
+		 */
+		boolean readBoolean() {
+			skipWhitespace();
+			if (text.startsWith("true", at)) {
+				at += 4;
+				return true;
+			}
+			if (text.startsWith("false", at)) {
+				at += 5;
+				return false;
+			}
+			throw error("true or false");
+		}
+
+		/*
+		 * Reads a whole number.
+		 */
+		int readInt() {
+			skipWhitespace();
+			int from = at;
+			if (at < text.length() && text.charAt(at) == '-') {
+				at++;
+			}
+			while (at < text.length() && Character.isDigit(text.charAt(at))) {
+				at++;
+			}
+			if (from == at) {
+				throw error("a number");
+			}
+			return Integer.parseInt(text.substring(from, at));
+		}
+
+		/*
+		 * Skips any value: a string, number, true, false, null, or an object or
+		 * array of those, nested at most MAX_DEPTH deep.
+		 */
+		void skipValue(int depth) {
+			skipWhitespace();
+			if (at < text.length() && text.charAt(at) == '"') {
+				readString();
+				return;
+			}
+			if (at < text.length() && (text.charAt(at) == '{' || text.charAt(at) == '[')) {
+				if (depth == MAX_DEPTH) {
+					throw error("at most " + MAX_DEPTH + " nested objects and arrays");
+				}
+				boolean object = text.charAt(at++) == '{';
+				char close = object ? '}' : ']';
+				if (!skip(close)) {
+					do {
+						if (object) {
+							readString();
+							expect(':');
+						}
+						skipValue(depth + 1);
+					} while (skip(','));
+					expect(close);
+				}
+				return;
+			}
+			int from = at;
+			while (at < text.length() && ",}] \t\r\n".indexOf(text.charAt(at)) < 0) {
+				at++;
+			}
+			if (from == at) {
+				throw error("a value");
+			}
+		}
+
+		/*
+		 * Skips the given character if it is next, returning whether it was.
+		 */
+		boolean skip(char c) {
+			skipWhitespace();
+			if (at < text.length() && text.charAt(at) == c) {
+				at++;
+				return true;
+			}
+			return false;
+		}
+
+		/*
+		 * Skips the given character, which must be next.
+		 */
+		void expect(char c) {
+			if (!skip(c)) {
+				throw error("'" + c + "'");
+			}
+		}
+
+		/*
+		 * Checks that only whitespace is left.
+		 */
+		void end() {
+			skipWhitespace();
+			if (at < text.length()) {
+				throw error("end of input");
+			}
+		}
+
+		/*
+		 * Skips spaces, tabs and line breaks.
+		 */
+		private void skipWhitespace() {
+			while (at < text.length() && Character.isWhitespace(text.charAt(at))) {
+				at++;
+			}
+		}
+
+		/*
+		 * Returns an exception for an unexpected character.
+		 */
+		private IllegalArgumentException error(String expected) {
+			return new IllegalArgumentException("Invalid JSON! Expected " + expected + " at character " + at);
+		}
+	}
+}
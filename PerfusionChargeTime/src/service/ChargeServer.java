@@ -0,0 +1,376 @@
+package service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import main.ChargeCache;
+import main.ChargeCalculator;
+import main.ChargeError;
+import main.ChargeMetrics;
+import main.ChargeReport;
+import main.ChargeTime;
+import main.ChargeValidator;
+
+/**
+ * ChargeServer is a small HTTP service on the local machine that calculates
+ * perfusion charges with the same rules as ChargeTime, so charting systems can
+ * ask for charges without the user interface. Results are returned as JSON
+ * with the total minutes, hours and minutes, the 999-minute ChargeMaster split
+ * and, for multi-day charges, the minutes for each day.
+ *
+ * <ul>
+ * <li>GET /charges?start=MMdd HHmm&amp;stop=MMdd HHmm&amp;multi=true - one
+ * case; entries may carry their years as "yyyyMMdd HHmm", and multi is
+ * optional and read as in a batch row (true, yes, y or 1)</li>
+ * <li>POST /charges/bulk - a JSON array of {"start", "stop", "multi"} objects,
+ * answered with an array of results in the same order; a body over 4 MB is
+ * refused with 413</li>
+ * <li>GET /metrics - the calculation metrics as plain text</li>
+ * </ul>
+ *
+ * Cases are looked up in the shared ChargeCache. Requests are handled on
+ * virtual threads when the Java runtime has them (21 or later), otherwise on a
+ * fixed pool of threads.
+ *
+ * @author Kimberle McGill
+ * @version 1.2.261018
+ */
+public class ChargeServer {
+
+	/* Underlying HTTP server */
+	private final HttpServer server;
+	/* Runs the request handlers */
+	private final ExecutorService executor;
+	/* Default port */
+	private final static int DEFAULT_PORT = 8080;
+	/* Exit status for bad arguments */
+	private final static int EXIT_USAGE = 2;
+	/* Usage line */
+	private final static String USAGE = "Usage: ChargeServer [port]";
+	/* Number of connections waiting to be accepted */
+	private final static int BACKLOG = 1024;
+	/* Seconds to wait for requests to finish when stopping */
+	private final static int STOP_DELAY = 1;
+	/* HTTP status for a good request */
+	private final static int OK = 200;
+	/* HTTP status for a bad request */
+	private final static int BAD_REQUEST = 400;
+	/* HTTP status for a method that is not allowed */
+	private final static int METHOD_NOT_ALLOWED = 405;
+	/* HTTP status for a request body that is too large */
+	private final static int PAYLOAD_TOO_LARGE = 413;
+	/* Largest request body read, in bytes */
+	private final static int MAX_BODY_SIZE = 4 << 20;
+	/* Size of the buffer for reading request bodies */
+	private final static int BUFFER_SIZE = 8192;
+	/* Expected characters in a result, for sizing the response */
+	private final static int RESULT_CHARS = 256;
+
+	/**
+	 * Constructs a new ChargeServer listening on the loopback address at the
+	 * given port. The server is not started.
+	 *
+	 * @param port
+	 *            the port to listen on, or 0 for any free port
+	 * @throws IOException
+	 *             if the port cannot be bound
+	 */
+	public ChargeServer(int port) throws IOException {
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+		this.executor = newRequestExecutor();
+		this.server.setExecutor(this.executor);
+		this.server.createContext("/charges", new ChargeHandler());
+		this.server.createContext("/charges/bulk", new BulkHandler());
+		this.server.createContext("/metrics", new MetricsHandler());
+	}
+
+	/**
+	 * Starts answering requests.
+	 */
+	public void start() {
+		this.server.start();
+	}
+
+	/**
+	 * Stops answering requests and releases the port.
+	 */
+	public void stop() {
+		this.server.stop(STOP_DELAY);
+		this.executor.shutdown();
+		try {
+			this.executor.awaitTermination(STOP_DELAY, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Gets the port the server is listening on.
+	 *
+	 * @return the port
+	 */
+	public int getPort() {
+		return this.server.getAddress().getPort();
+	}
+
+	/*
+	 * Answers GET /charges for a single case.
+	 */
+	private class ChargeHandler implements HttpHandler {
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			if (!"GET".equals(exchange.getRequestMethod())) {
+				send(exchange, METHOD_NOT_ALLOWED, errorJson("Use GET"));
+				return;
+			}
+
+			String start = null;
+			String stop = null;
+			int multi = ChargeValidator.SINGLE_DAY;
+			int year = 0;
+			String query = exchange.getRequestURI().getRawQuery();
+			if (query != null) {
+				for (String pair : query.split("&")) {
+					int equals = pair.indexOf('=');
+					String name = equals < 0 ? pair : pair.substring(0, equals);
+					String value = equals < 0 ? "" : decode(pair.substring(equals + 1));
+					if (name.equals("start")) {
+						start = value;
+					} else if (name.equals("stop")) {
+						stop = value;
+					} else if (name.equals("multi")) {
+						multi = ChargeValidator.parseMulti(value.trim());
+					} else if (name.equals("year")) {
+						year = parseYear(value);
+					}
+				}
+			}
+			if (start == null || stop == null) {
+				send(exchange, BAD_REQUEST, errorJson("Please provide start and stop"));
+				return;
+			}
+			if (multi == ChargeCalculator.INVALID) {
+				ChargeMetrics.shared().countError(ChargeError.MULTI_FLAG);
+				send(exchange, BAD_REQUEST, errorJson(ChargeError.MULTI_FLAG.getMessage()));
+				return;
+			}
+			if (year < 0) {
+				send(exchange, BAD_REQUEST, errorJson("Invalid year! Years must be a number"));
+				return;
+			}
+
+			StringBuilder json = new StringBuilder(RESULT_CHARS);
+			boolean calculated = appendCharge(json,
+					new CaseRequest(start, stop, multi == ChargeValidator.MULTI_DAY, year));
+			send(exchange, calculated ? OK : BAD_REQUEST, json.toString());
+		}
+	}
+
+	/*
+	 * Answers POST /charges/bulk for an array of cases.
+	 */
+	private class BulkHandler implements HttpHandler {
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				send(exchange, METHOD_NOT_ALLOWED, errorJson("Use POST"));
+				return;
+			}
+
+			String body = readBody(exchange.getRequestBody());
+			if (body == null) {
+				send(exchange, PAYLOAD_TOO_LARGE, errorJson("Request body is over " + MAX_BODY_SIZE + " bytes"));
+				return;
+			}
+			List<CaseRequest> cases;
+			try {
+				cases = CaseRequest.parseArray(body);
+			} catch (IllegalArgumentException e) {
+				send(exchange, BAD_REQUEST, errorJson(e.getMessage()));
+				return;
+			}
+
+			StringBuilder json = new StringBuilder(RESULT_CHARS * (cases.size() + 1));
+			json.append('[');
+			for (int i = 0; i < cases.size(); i++) {
+				if (i > 0) {
+					json.append(',');
+				}
+				appendCharge(json, cases.get(i));
+			}
+			json.append(']');
+			send(exchange, OK, json.toString());
+		}
+	}
+
+	/*
+	 * Answers GET /metrics with the calculation metrics as plain text.
+	 */
+	private static class MetricsHandler implements HttpHandler {
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			if (!"GET".equals(exchange.getRequestMethod())) {
+				send(exchange, METHOD_NOT_ALLOWED, errorJson("Use GET"));
+				return;
+			}
+			byte[] body = ChargeMetrics.shared().dump().getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+			exchange.sendResponseHeaders(OK, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		}
+	}
+
+	/*
+	 * Calculates one case and appends its result, or its error, as a JSON
+	 * object. Returns false if the case could not be calculated.
+	 */
+	private static boolean appendCharge(StringBuilder json, CaseRequest charge) {
+		int startEntry = ChargeCalculator.parseEntry(charge.start);
+		int stopEntry = ChargeCalculator.parseEntry(charge.stop);
+		boolean dated = startEntry == ChargeCalculator.INVALID || stopEntry == ChargeCalculator.INVALID;
+		int year = charge.year != 0 ? charge.year : LocalDate.now().getYear();
+		ChargeError error;
+		if (dated) {
+			long startMinute = ChargeCalculator.parseDateTime(charge.start);
+			long stopMinute = ChargeCalculator.parseDateTime(charge.stop);
+			error = startMinute == ChargeCalculator.INVALID_MINUTE ? ChargeValidator.checkDateTime(charge.start)
+					: stopMinute == ChargeCalculator.INVALID_MINUTE ? ChargeValidator.checkDateTime(charge.stop)
+							: ChargeValidator.checkSpan(startMinute, stopMinute);
+		} else {
+			error = ChargeValidator.check(startEntry, stopEntry, charge.multi, year);
+		}
+		if (error != null) {
+			ChargeMetrics.shared().countError(error);
+			appendError(json, error.getMessage());
+			return false;
+		}
+		ChargeTime time = dated ? new ChargeTime(charge.start, charge.stop, charge.multi, year)
+				: ChargeCache.shared().get(startEntry, stopEntry, charge.multi, year);
+
+		ChargeReport.append(json, time, ChargeReport.Format.JSON);
+		return true;
+	}
+
+	/*
+	 * Appends an error object.
+	 */
+	private static void appendError(StringBuilder json, String message) {
+		json.append("{\"error\":");
+		ChargeReport.appendJsonString(json, message);
+		json.append('}');
+	}
+
+	/*
+	 * Returns an error object as text.
+	 */
+	private static String errorJson(String message) {
+		StringBuilder json = new StringBuilder();
+		appendError(json, message);
+		return json.toString();
+	}
+
+	/*
+	 * Sends a JSON response and closes the exchange.
+	 */
+	private static void send(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	/*
+	 * Reads the whole request body as UTF-8 text, or returns null if it is over
+	 * MAX_BODY_SIZE bytes.
+	 */
+	private static String readBody(InputStream in) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int read;
+		while ((read = in.read(buffer)) > 0) {
+			if (body.size() + read > MAX_BODY_SIZE) {
+				return null;
+			}
+			body.write(buffer, 0, read);
+		}
+		return new String(body.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/*
+	 * Decodes a query parameter value.
+	 */
+	private static String decode(String value) {
+		try {
+			return URLDecoder.decode(value, "UTF-8");
+		} catch (UnsupportedEncodingException | IllegalArgumentException e) {
+			return value;
+		}
+	}
+
+	/*
+	 * Reads the year parameter, or returns -1 if it is not a number.
+	 */
+	private static int parseYear(String value) {
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/*
+	 * Returns a virtual thread per task executor when the runtime has one,
+	 * otherwise a fixed pool with two threads per processor.
+	 */
+	private static ExecutorService newRequestExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newFixedThreadPool(2 * Runtime.getRuntime().availableProcessors());
+		}
+	}
+
+	/**
+	 * Main method which starts the charge service.
+	 *
+	 * @param args
+	 *            optional port to listen on (8080 if not given)
+	 */
+	public static void main(String[] args) {
+		try {
+			ChargeServer server = new ChargeServer(args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT);
+			server.start();
+			System.out.println("Charge service listening on http://localhost:" + server.getPort() + "/charges");
+		} catch (IllegalArgumentException e) {
+			// a port that is not a number or out of range
+			System.err.println(USAGE);
+			System.exit(EXIT_USAGE);
+		} catch (IOException e) {
+			System.err.println("Could not start the charge service: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,357 @@
+package store;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import main.ChargeCalculator;
+import main.ChargeTime;
+
+/**
+ * CaseBuffer keeps calculated cases outside the Java heap, in fixed-width
+ * records of direct ByteBuffers, so a run can hold tens of millions of cases
+ * while the heap holds only one small buffer object per 65536 cases and the
+ * garbage collector has nothing to trace. Each record is 20 bytes:
+ *
+ * <pre>
+ *  0  start minute        int, minutes since 1970-01-01 00:00
+ *  4  stop minute         int, minutes since 1970-01-01 00:00
+ *  8  total minutes       int
+ * 12  number of days      int
+ * 16  flags               int, bit 0 set for a multi-day case
+ * </pre>
+ *
+ * As in a CaseStore, the start and stop are on the wall clock and the total
+ * is the minutes charged, which across a night the clocks change is an hour
+ * more or less than the stop less the start.
+ *
+ * Records are read by index, or in order through a CaseLog.RecordVisitor.
+ * The buffer grows a segment at a time and is released by close; it may not
+ * be used after that. The memory of a direct buffer goes back to the system
+ * when the buffer is collected, so close drops the segments for the next
+ * collection to free. The total is bounded by -XX:MaxDirectMemorySize, not
+ * the heap.
+ *
+ * A CaseBuffer is not safe for use by more than one thread at once while it
+ * is being filled.
+ *
+ * @author Kimberle McGill
+ * @version 1.2.261018
+ */
+public class CaseBuffer implements CaseLog.RecordVisitor, Closeable {
+
+	/* Segments of records, null once closed */
+	private ByteBuffer[] segments;
+	/* Number of segments in use */
+	private int segmentCount;
+	/* Number of cases */
+	private int size;
+	/* Size of a record in bytes */
+	private final static int RECORD_SIZE = 20;
+	/* Offset of the start minute in a record */
+	private final static int START = 0;
+	/* Offset of the stop minute in a record */
+	private final static int STOP = 4;
+	/* Offset of the total minutes in a record */
+	private final static int TOTAL = 8;
+	/* Offset of the number of days in a record */
+	private final static int DAYS = 12;
+	/* Offset of the flags in a record */
+	private final static int FLAGS = 16;
+	/* Flag marking a multi-day case */
+	private final static int MULTI_FLAG = 1;
+	/* Shift from a case index to its segment */
+	private final static int SEGMENT_SHIFT = 16;
+	/* Number of records in a segment */
+	private final static int SEGMENT_RECORDS = 1 << SEGMENT_SHIFT;
+	/* Mask from a case index to its record in the segment */
+	private final static int RECORD_MASK = SEGMENT_RECORDS - 1;
+	/* Segment slots made before the first grows */
+	private final static int INITIAL_SEGMENTS = 16;
+	/* Number of bytes in a megabyte */
+	private final static long MEGABYTE = 1 << 20;
+
+	/**
+	 * Constructs a new, empty CaseBuffer. No memory is taken until the first
+	 * case is added.
+	 */
+	public CaseBuffer() {
+		this.segments = new ByteBuffer[INITIAL_SEGMENTS];
+	}
+
+	/**
+	 * Adds a calculated case.
+	 *
+	 * @param startMinute
+	 *            start, minutes since 1970-01-01 00:00
+	 * @param stopMinute
+	 *            stop, minutes since 1970-01-01 00:00
+	 * @param multi
+	 *            whether this is a multi-day charge
+	 * @param totalMinutes
+	 *            total minutes charged
+	 * @param numberOfDays
+	 *            number of calendar days charged
+	 * @throws IllegalStateException
+	 *             if the buffer is closed or holds Integer.MAX_VALUE cases
+	 */
+	public void add(int startMinute, int stopMinute, boolean multi, int totalMinutes, int numberOfDays) {
+		checkOpen();
+		if (this.size == Integer.MAX_VALUE) {
+			throw new IllegalStateException("CaseBuffer is full");
+		}
+		if (this.size >>> SEGMENT_SHIFT == this.segmentCount) {
+			addSegment();
+		}
+		ByteBuffer segment = this.segments[this.size >>> SEGMENT_SHIFT];
+		int at = (this.size & RECORD_MASK) * RECORD_SIZE;
+		segment.putInt(at + START, startMinute);
+		segment.putInt(at + STOP, stopMinute);
+		segment.putInt(at + TOTAL, totalMinutes);
+		segment.putInt(at + DAYS, numberOfDays);
+		segment.putInt(at + FLAGS, multi ? MULTI_FLAG : 0);
+		this.size++;
+	}
+
+	/**
+	 * Adds a calculated case: its wall clock start and stop, and its total
+	 * minutes charged in its time zone.
+	 *
+	 * @param charge
+	 *            the calculated charges
+	 * @throws IllegalArgumentException
+	 *             if the charge is outside the years a CaseBuffer holds
+	 * @throws IllegalStateException
+	 *             if the buffer is closed
+	 */
+	public void add(ChargeTime charge) {
+		checkMinutes(charge.getStartEpochMinute(), charge.getStopEpochMinute());
+		add((int) charge.getStartEpochMinute(), (int) charge.getStopEpochMinute(), charge.isMulti(),
+				(int) charge.getTotalMinutes(), charge.getNumberOfDays());
+	}
+
+	/**
+	 * Adds a case calculated by ChargeCalculator.calculate into a result array.
+	 *
+	 * @param startMinute
+	 *            start, minutes since 1970-01-01 00:00
+	 * @param stopMinute
+	 *            stop, minutes since 1970-01-01 00:00
+	 * @param multi
+	 *            whether this is a multi-day charge
+	 * @param result
+	 *            the calculated result
+	 * @throws IllegalArgumentException
+	 *             if the minutes are outside the years a CaseBuffer holds
+	 * @throws IllegalStateException
+	 *             if the buffer is closed
+	 */
+	public void add(long startMinute, long stopMinute, boolean multi, int[] result) {
+		checkMinutes(startMinute, stopMinute);
+		add((int) startMinute, (int) stopMinute, multi, result[ChargeCalculator.TOTAL_MINUTES],
+				result[ChargeCalculator.NUMBER_OF_DAYS]);
+	}
+
+	/**
+	 * Adds every case of a CaseStore, in order.
+	 *
+	 * @param store
+	 *            the store whose cases are added
+	 * @throws IllegalStateException
+	 *             if the buffer is closed
+	 */
+	public void addAll(CaseStore store) {
+		for (int i = 0; i < store.size(); i++) {
+			add(store.getStartMinute(i), store.getStopMinute(i), store.isMulti(i), store.getTotalMinutes(i),
+					store.getNumberOfDays(i));
+		}
+	}
+
+	/**
+	 * Adds a case replayed from a CaseLog.
+	 *
+	 * @param startMinute
+	 *            start, minutes since 1970-01-01 00:00
+	 * @param stopMinute
+	 *            stop, minutes since 1970-01-01 00:00
+	 * @param multi
+	 *            whether this is a multi-day charge
+	 * @param totalMinutes
+	 *            total minutes charged
+	 * @param numberOfDays
+	 *            number of calendar days charged
+	 */
+	@Override
+	public void visit(int startMinute, int stopMinute, boolean multi, int totalMinutes, int numberOfDays) {
+		add(startMinute, stopMinute, multi, totalMinutes, numberOfDays);
+	}
+
+	/**
+	 * Hands every case to the visitor, in the order they were added, without
+	 * creating anything per case.
+	 *
+	 * @param visitor
+	 *            receives each case
+	 * @throws IllegalStateException
+	 *             if the buffer is closed
+	 */
+	public void forEach(CaseLog.RecordVisitor visitor) {
+		checkOpen();
+		for (int s = 0; s < this.segmentCount; s++) {
+			ByteBuffer segment = this.segments[s];
+			int records = Math.min(this.size - (s << SEGMENT_SHIFT), SEGMENT_RECORDS);
+			for (int at = 0; at < records * RECORD_SIZE; at += RECORD_SIZE) {
+				visitor.visit(segment.getInt(at + START), segment.getInt(at + STOP),
+						(segment.getInt(at + FLAGS) & MULTI_FLAG) != 0, segment.getInt(at + TOTAL),
+						segment.getInt(at + DAYS));
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of cases.
+	 *
+	 * @return the number of cases
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Gets the start of a case.
+	 *
+	 * @param index
+	 *            zero based index of the case
+	 * @return the start, minutes since 1970-01-01 00:00
+	 */
+	public int getStartMinute(int index) {
+		return field(index, START);
+	}
+
+	/**
+	 * Gets the stop of a case.
+	 *
+	 * @param index
+	 *            zero based index of the case
+	 * @return the stop, minutes since 1970-01-01 00:00
+	 */
+	public int getStopMinute(int index) {
+		return field(index, STOP);
+	}
+
+	/**
+	 * Gets the total minutes of a case.
+	 *
+	 * @param index
+	 *            zero based index of the case
+	 * @return the total minutes charged
+	 */
+	public int getTotalMinutes(int index) {
+		return field(index, TOTAL);
+	}
+
+	/**
+	 * Gets the number of calendar days of a case.
+	 *
+	 * @param index
+	 *            zero based index of the case
+	 * @return the number of days charged
+	 */
+	public int getNumberOfDays(int index) {
+		return field(index, DAYS);
+	}
+
+	/**
+	 * Is a case a multi-day charge?
+	 *
+	 * @param index
+	 *            zero based index of the case
+	 * @return true if the case is a multi-day charge
+	 */
+	public boolean isMulti(int index) {
+		return (field(index, FLAGS) & MULTI_FLAG) != 0;
+	}
+
+	/**
+	 * Gets the number of bytes taken outside the heap.
+	 *
+	 * @return the bytes of all segments, 0 once closed
+	 */
+	public long getOffHeapBytes() {
+		return (long) this.segmentCount * SEGMENT_RECORDS * RECORD_SIZE;
+	}
+
+	/**
+	 * Is the buffer closed?
+	 *
+	 * @return true once close has been called
+	 */
+	public boolean isClosed() {
+		return this.segments == null;
+	}
+
+	/**
+	 * Releases the segments. The buffer holds no cases and may not be used
+	 * again. Closing a closed buffer does nothing.
+	 */
+	@Override
+	public void close() {
+		this.segments = null;
+		this.segmentCount = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * Returns the number of cases and the memory they take.
+	 *
+	 * @return a single line of text
+	 */
+	@Override
+	public String toString() {
+		if (isClosed()) {
+			return "case buffer closed";
+		}
+		return "case buffer, " + this.size + " cases, " + getOffHeapBytes() / MEGABYTE + " MB off-heap";
+	}
+
+	/*
+	 * Reads a field of a case.
+	 */
+	private int field(int index, int offset) {
+		checkOpen();
+		if (index < 0 || index >= this.size) {
+			throw new IndexOutOfBoundsException("Case " + index + " of " + this.size);
+		}
+		return this.segments[index >>> SEGMENT_SHIFT].getInt((index & RECORD_MASK) * RECORD_SIZE + offset);
+	}
+
+	/*
+	 * Allocates the next segment.
+	 */
+	private void addSegment() {
+		if (this.segmentCount == this.segments.length) {
+			this.segments = Arrays.copyOf(this.segments, this.segments.length * 2);
+		}
+		this.segments[this.segmentCount++] = ByteBuffer.allocateDirect(SEGMENT_RECORDS * RECORD_SIZE)
+				.order(ByteOrder.nativeOrder());
+	}
+
+	/*
+	 * Throws if the buffer is closed.
+	 */
+	private void checkOpen() {
+		if (this.segments == null) {
+			throw new IllegalStateException("CaseBuffer is closed");
+		}
+	}
+
+	/*
+	 * Throws if a start or stop does not fit in a record.
+	 */
+	private static void checkMinutes(long startMinute, long stopMinute) {
+		if (startMinute != (int) startMinute || stopMinute != (int) stopMinute) {
+			throw new IllegalArgumentException("Case is outside the years a CaseBuffer holds");
+		}
+	}
+}
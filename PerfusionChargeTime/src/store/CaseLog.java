@@ -0,0 +1,349 @@
+package store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import main.ChargeTime;
+
+/**
+ * CaseLog is an append-only binary log of calculated cases, kept so the
+ * charges of every case can be audited later. Each case is one fixed-width
+ * 16 byte record:
+ *
+ * <pre>
+ *  0  int  start, minutes since 1970-01-01 00:00
+ *  4  int  stop, minutes since 1970-01-01 00:00
+ *  8  int  total minutes
+ * 12  int  number of days, with the top bit set for a multi-day charge
+ * </pre>
+ *
+ * after a 16 byte header holding the magic number, the format version and the
+ * record size. Records are gathered in a direct buffer and written with a
+ * FileChannel; the log is only forced to disk after a batch of records (or on
+ * sync and close), so appending costs about as much as a memory copy.
+ * Minutes are kept as ints, which hold the years 1970 back and forward about
+ * 4000 years; a charge outside them is refused rather than written wrapped.
+ *
+ * Replaying reads the records in large blocks and hands each one to a
+ * RecordVisitor as plain numbers, so no entry text is parsed. A record cut
+ * short by a crash at the end of the log is ignored.
+ *
+ * @author Kimberle McGill
+ * @version 1.2.261018
+ */
+public class CaseLog implements Closeable {
+
+	/** Size of one record in bytes */
+	public static final int RECORD_SIZE = 16;
+	/** Size of the header in bytes */
+	public static final int HEADER_SIZE = 16;
+
+	/* Channel the records are appended to */
+	private final FileChannel channel;
+	/* Records waiting to be written */
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	/* Number of records written between forcing the log to disk */
+	private final int syncInterval;
+	/* Records written since the log was last forced to disk */
+	private int unsynced;
+	/* Number of records appended since the log was opened */
+	private long appended;
+	/* "CHLG" */
+	private final static int MAGIC = 0x43484C47;
+	/* Version of the record layout */
+	private final static int VERSION = 1;
+	/* Size of the write buffer, a whole number of records */
+	private final static int BUFFER_SIZE = RECORD_SIZE * 4096;
+	/* Size of a replay block, a whole number of records */
+	private final static int REPLAY_BLOCK = RECORD_SIZE * 65536;
+	/* Default number of records between forcing the log to disk */
+	private final static int DEFAULT_SYNC_INTERVAL = 1024;
+	/* Flag marking a multi-day charge */
+	private final static int MULTI_FLAG = 0x80000000;
+	/* Mask of the number of days */
+	private final static int DAYS_MASK = 0x7FFFFFFF;
+	/* Number of minutes in an hour */
+	private final static int MIN_PER_HOUR = 60;
+
+	/**
+	 * Receives the records of a log as it is replayed.
+	 */
+	public interface RecordVisitor {
+
+		/**
+		 * Receives one record.
+		 *
+		 * @param startMinute
+		 *            start, minutes since 1970-01-01 00:00
+		 * @param stopMinute
+		 *            stop, minutes since 1970-01-01 00:00
+		 * @param multi
+		 *            whether this is a multi-day charge
+		 * @param totalMinutes
+		 *            total minutes charged
+		 * @param numberOfDays
+		 *            number of calendar days charged
+		 */
+		void visit(int startMinute, int stopMinute, boolean multi, int totalMinutes, int numberOfDays);
+	}
+
+	/**
+	 * Opens the log at the given path for appending, creating it if it does
+	 * not exist. The log is forced to disk every 1024 records.
+	 *
+	 * @param path
+	 *            the log file
+	 * @throws IOException
+	 *             if the log cannot be opened or is not a case log
+	 */
+	public CaseLog(Path path) throws IOException {
+		this(path, DEFAULT_SYNC_INTERVAL);
+	}
+
+	/**
+	 * Opens the log at the given path for appending, creating it if it does
+	 * not exist.
+	 *
+	 * @param path
+	 *            the log file
+	 * @param syncInterval
+	 *            number of records between forcing the log to disk, 1 to force
+	 *            every record
+	 * @throws IOException
+	 *             if the log cannot be opened or is not a case log
+	 */
+	public CaseLog(Path path, int syncInterval) throws IOException {
+		this.syncInterval = Math.max(syncInterval, 1);
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			long size = this.channel.size();
+			// only a new or empty file is given a header, anything else must be a log
+			if (size == 0) {
+				ByteBuffer header = header();
+				while (header.hasRemaining()) {
+					this.channel.write(header, header.position());
+				}
+				this.channel.force(true);
+				size = HEADER_SIZE;
+			} else {
+				checkHeader(this.channel);
+			}
+
+			// drop a record cut short at the end of the log
+			long whole = HEADER_SIZE + (size - HEADER_SIZE) / RECORD_SIZE * RECORD_SIZE;
+			if (whole < size) {
+				this.channel.truncate(whole);
+			}
+			this.channel.position(whole);
+		} catch (IOException e) {
+			this.channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Appends the given charges to the log.
+	 *
+	 * @param charge
+	 *            the calculated charges
+	 * @throws IllegalArgumentException
+	 *             if the charge is outside the years a CaseLog holds
+	 * @throws IOException
+	 *             if the log cannot be written
+	 */
+	public void append(ChargeTime charge) throws IOException {
+		long startMinute = charge.getStartEpochMinute();
+		long stopMinute = charge.getStopEpochMinute();
+		long totalMinutes = charge.getTotalMinutes();
+		if (startMinute != (int) startMinute || stopMinute != (int) stopMinute || totalMinutes != (int) totalMinutes) {
+			throw new IllegalArgumentException("Case is outside the years a CaseLog holds");
+		}
+		append((int) startMinute, (int) stopMinute, charge.isMulti(), (int) totalMinutes, charge.getNumberOfDays());
+	}
+
+	/**
+	 * Appends one record to the log.
+	 *
+	 * @param startMinute
+	 *            start, minutes since 1970-01-01 00:00
+	 * @param stopMinute
+	 *            stop, minutes since 1970-01-01 00:00
+	 * @param multi
+	 *            whether this is a multi-day charge
+	 * @param totalMinutes
+	 *            total minutes charged
+	 * @param numberOfDays
+	 *            number of calendar days charged
+	 * @throws IOException
+	 *             if the log cannot be written
+	 */
+	public synchronized void append(int startMinute, int stopMinute, boolean multi, int totalMinutes,
+			int numberOfDays) throws IOException {
+		this.buffer.putInt(startMinute);
+		this.buffer.putInt(stopMinute);
+		this.buffer.putInt(totalMinutes);
+		this.buffer.putInt((numberOfDays & DAYS_MASK) | (multi ? MULTI_FLAG : 0));
+		this.appended++;
+		this.unsynced++;
+		if (!this.buffer.hasRemaining()) {
+			writeBuffer();
+		}
+		if (this.unsynced >= this.syncInterval) {
+			sync();
+		}
+	}
+
+	/**
+	 * Writes the waiting records and forces the log to disk.
+	 *
+	 * @throws IOException
+	 *             if the log cannot be written
+	 */
+	public synchronized void sync() throws IOException {
+		writeBuffer();
+		this.channel.force(false);
+		this.unsynced = 0;
+	}
+
+	/**
+	 * Gets the number of records appended since the log was opened.
+	 *
+	 * @return the number of records appended
+	 */
+	public synchronized long getAppended() {
+		return this.appended;
+	}
+
+	/**
+	 * Writes the waiting records, forces the log to disk and closes it.
+	 *
+	 * @throws IOException
+	 *             if the log cannot be written
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (!this.channel.isOpen()) {
+			return;
+		}
+		try {
+			sync();
+		} finally {
+			this.channel.close();
+		}
+	}
+
+	/**
+	 * Reads every record of the log at the given path, in the order appended.
+	 *
+	 * @param path
+	 *            the log file
+	 * @param visitor
+	 *            receives each record
+	 * @return the number of records read
+	 * @throws IOException
+	 *             if the log cannot be read or is not a case log
+	 */
+	public static long replay(Path path, RecordVisitor visitor) throws IOException {
+		long count = 0;
+		try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+			checkHeader(in);
+			ByteBuffer block = ByteBuffer.allocateDirect(REPLAY_BLOCK);
+			long position = HEADER_SIZE;
+			int read;
+			while ((read = in.read(block, position)) > 0) {
+				position += read;
+				block.flip();
+				while (block.remaining() >= RECORD_SIZE) {
+					int startMinute = block.getInt();
+					int stopMinute = block.getInt();
+					int totalMinutes = block.getInt();
+					int days = block.getInt();
+					visitor.visit(startMinute, stopMinute, (days & MULTI_FLAG) != 0, totalMinutes, days & DAYS_MASK);
+					count++;
+				}
+				block.compact();
+			}
+		}
+		return count;
+	}
+
+	/*
+	 * Writes the waiting records to the channel.
+	 */
+	private void writeBuffer() throws IOException {
+		this.buffer.flip();
+		while (this.buffer.hasRemaining()) {
+			this.channel.write(this.buffer);
+		}
+		this.buffer.clear();
+	}
+
+	/*
+	 * Returns the header of a new log, ready to be written.
+	 */
+	private static ByteBuffer header() {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putInt(0);
+		header.flip();
+		return header;
+	}
+
+	/*
+	 * Checks the header of a log, throwing an IOException if it is not a case
+	 * log this version can read.
+	 */
+	private static void checkHeader(FileChannel in) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		while (header.hasRemaining()) {
+			if (in.read(header, header.position()) < 0) {
+				throw new IOException("Not a case log");
+			}
+		}
+		header.flip();
+		if (header.getInt() != MAGIC) {
+			throw new IOException("Not a case log");
+		}
+		int version = header.getInt();
+		if (version != VERSION || header.getInt() != RECORD_SIZE) {
+			throw new IOException("Unsupported case log version " + version);
+		}
+	}
+
+	/**
+	 * Main method which replays a case log and prints its totals.
+	 *
+	 * @param args
+	 *            the case log
+	 */
+	public static void main(String[] args) {
+		if (args.length != 1) {
+			System.err.println("Usage: CaseLog caselog");
+			System.exit(1);
+		}
+		final long[] totals = new long[3];
+		try {
+			long begin = System.nanoTime();
+			long count = replay(Paths.get(args[0]), (startMinute, stopMinute, multi, totalMinutes, numberOfDays) -> {
+				totals[0] += totalMinutes;
+				totals[1] += numberOfDays;
+				if (multi) {
+					totals[2]++;
+				}
+			});
+			double seconds = (System.nanoTime() - begin) / 1e9;
+			System.out.println(String.format("%d cases (%d multi-day), %d days, %d minutes (%d hours, %d minutes)",
+					count, totals[2], totals[1], totals[0], totals[0] / MIN_PER_HOUR, totals[0] % MIN_PER_HOUR));
+			System.out.println(String.format("replayed in %.3f s (%.0f records/sec)", seconds,
+					seconds > 0 ? count / seconds : 0.0));
+		} catch (IOException e) {
+			System.err.println("Could not replay the case log: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+}
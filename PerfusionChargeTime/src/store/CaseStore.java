@@ -0,0 +1,566 @@
+package store;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import main.ChargeCalculator;
+import main.ChargeTime;
+
+/**
+ * CaseStore keeps calculated cases in columns: the start minute, stop minute,
+ * total minutes, number of days and multi-day flag of every case are held in
+ * parallel primitive arrays, about 17 bytes a case, with no object per case.
+ * Questions over many cases (the sum, smallest, largest or a percentile of the
+ * total minutes of the cases that started in a window, or of the multi-day
+ * cases only) are answered by one pass down the columns they need, a plain
+ * counted loop over int arrays. Minutes are kept as ints, which hold the
+ * years 1970 back and forward about 4000 years.
+ *
+ * The start and stop are on the wall clock and the total is the minutes
+ * charged, so for a charge calculated in a time zone the total is an hour
+ * more or less than the stop less the start across a night the clocks
+ * change. Sums and percentiles are of the totals, and agree with the charges.
+ *
+ * A store is filled by the batch calculation (see ChargeBatch) or from a
+ * CaseLog, and is read by index or through a Filter. It is not safe for use by
+ * more than one thread at once while it is being filled.
+ *
+ * @author Kimberle McGill
+ * @version 1.2.261018
+ */
+public class CaseStore implements CaseLog.RecordVisitor {
+
+	/* Start of each case, minutes since 1970-01-01 00:00 */
+	private int[] starts;
+	/* Stop of each case, minutes since 1970-01-01 00:00 */
+	private int[] stops;
+	/* Total minutes of each case */
+	private int[] totals;
+	/* Number of calendar days of each case */
+	private int[] days;
+	/* Flags of each case */
+	private byte[] flags;
+	/* Number of cases */
+	private int size;
+	/* Cases held before the columns first grow */
+	private final static int INITIAL_CASES = 1024;
+	/* Flag marking a multi-day case */
+	private final static byte MULTI_FLAG = 1;
+	/* Percentiles shown by describe */
+	private final static double[] PERCENTILES = { 50, 90, 99 };
+
+	/**
+	 * Constructs a new, empty CaseStore.
+	 */
+	public CaseStore() {
+		this(INITIAL_CASES);
+	}
+
+	/**
+	 * Constructs a new, empty CaseStore with room for the given number of cases
+	 * before it grows.
+	 *
+	 * @param capacity
+	 *            the number of cases to make room for
+	 */
+	public CaseStore(int capacity) {
+		int length = Math.max(capacity, 1);
+		this.starts = new int[length];
+		this.stops = new int[length];
+		this.totals = new int[length];
+		this.days = new int[length];
+		this.flags = new byte[length];
+	}
+
+	/**
+	 * Adds a calculated case.
+	 *
+	 * @param startMinute
+	 *            start, minutes since 1970-01-01 00:00
+	 * @param stopMinute
+	 *            stop, minutes since 1970-01-01 00:00
+	 * @param multi
+	 *            whether this is a multi-day charge
+	 * @param totalMinutes
+	 *            total minutes charged
+	 * @param numberOfDays
+	 *            number of calendar days charged
+	 */
+	public void add(int startMinute, int stopMinute, boolean multi, int totalMinutes, int numberOfDays) {
+		ensureCapacity(this.size + 1);
+		this.starts[this.size] = startMinute;
+		this.stops[this.size] = stopMinute;
+		this.totals[this.size] = totalMinutes;
+		this.days[this.size] = numberOfDays;
+		this.flags[this.size] = multi ? MULTI_FLAG : 0;
+		this.size++;
+	}
+
+	/**
+	 * Adds a calculated case: its wall clock start and stop, and its total
+	 * minutes charged in its time zone.
+	 *
+	 * @param charge
+	 *            the calculated charges
+	 * @throws IllegalArgumentException
+	 *             if the charge is outside the years a CaseStore holds
+	 */
+	public void add(ChargeTime charge) {
+		checkMinutes(charge.getStartEpochMinute(), charge.getStopEpochMinute());
+		add((int) charge.getStartEpochMinute(), (int) charge.getStopEpochMinute(), charge.isMulti(),
+				(int) charge.getTotalMinutes(), charge.getNumberOfDays());
+	}
+
+	/**
+	 * Adds a case calculated by ChargeCalculator.calculate into a result array.
+	 *
+	 * @param startMinute
+	 *            start, minutes since 1970-01-01 00:00
+	 * @param stopMinute
+	 *            stop, minutes since 1970-01-01 00:00
+	 * @param multi
+	 *            whether this is a multi-day charge
+	 * @param result
+	 *            the calculated result
+	 * @throws IllegalArgumentException
+	 *             if the minutes are outside the years a CaseStore holds
+	 */
+	public void add(long startMinute, long stopMinute, boolean multi, int[] result) {
+		checkMinutes(startMinute, stopMinute);
+		add((int) startMinute, (int) stopMinute, multi, result[ChargeCalculator.TOTAL_MINUTES],
+				result[ChargeCalculator.NUMBER_OF_DAYS]);
+	}
+
+	/**
+	 * Adds every case of another store, in order.
+	 *
+	 * @param other
+	 *            the store whose cases are added
+	 */
+	public void addAll(CaseStore other) {
+		int count = other.size;
+		ensureCapacity(this.size + count);
+		System.arraycopy(other.starts, 0, this.starts, this.size, count);
+		System.arraycopy(other.stops, 0, this.stops, this.size, count);
+		System.arraycopy(other.totals, 0, this.totals, this.size, count);
+		System.arraycopy(other.days, 0, this.days, this.size, count);
+		System.arraycopy(other.flags, 0, this.flags, this.size, count);
+		this.size += count;
+	}
+
+	/**
+	 * Adds a case replayed from a CaseLog.
+	 *
+	 * @param startMinute
+	 *            start, minutes since 1970-01-01 00:00
+	 * @param stopMinute
+	 *            stop, minutes since 1970-01-01 00:00
+	 * @param multi
+	 *            whether this is a multi-day charge
+	 * @param totalMinutes
+	 *            total minutes charged
+	 * @param numberOfDays
+	 *            number of calendar days charged
+	 */
+	@Override
+	public void visit(int startMinute, int stopMinute, boolean multi, int totalMinutes, int numberOfDays) {
+		add(startMinute, stopMinute, multi, totalMinutes, numberOfDays);
+	}
+
+	/**
+	 * Removes every case.
+	 */
+	public void clear() {
+		this.size = 0;
+	}
+
+	/**
+	 * Gets the number of cases.
+	 *
+	 * @return the number of cases
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Gets the start of a case.
+	 *
+	 * @param index
+	 *            zero based index of the case
+	 * @return the start, minutes since 1970-01-01 00:00
+	 */
+	public int getStartMinute(int index) {
+		checkIndex(index);
+		return this.starts[index];
+	}
+
+	/**
+	 * Gets the stop of a case.
+	 *
+	 * @param index
+	 *            zero based index of the case
+	 * @return the stop, minutes since 1970-01-01 00:00
+	 */
+	public int getStopMinute(int index) {
+		checkIndex(index);
+		return this.stops[index];
+	}
+
+	/**
+	 * Gets the total minutes of a case.
+	 *
+	 * @param index
+	 *            zero based index of the case
+	 * @return the total minutes charged
+	 */
+	public int getTotalMinutes(int index) {
+		checkIndex(index);
+		return this.totals[index];
+	}
+
+	/**
+	 * Gets the number of calendar days of a case.
+	 *
+	 * @param index
+	 *            zero based index of the case
+	 * @return the number of days charged
+	 */
+	public int getNumberOfDays(int index) {
+		checkIndex(index);
+		return this.days[index];
+	}
+
+	/**
+	 * Is a case a multi-day charge?
+	 *
+	 * @param index
+	 *            zero based index of the case
+	 * @return true if the case is a multi-day charge
+	 */
+	public boolean isMulti(int index) {
+		checkIndex(index);
+		return (this.flags[index] & MULTI_FLAG) != 0;
+	}
+
+	/**
+	 * Counts the cases that pass the filter.
+	 *
+	 * @param filter
+	 *            the cases to count
+	 * @return the number of cases
+	 */
+	public int count(Filter filter) {
+		int[] starts = this.starts;
+		byte[] flags = this.flags;
+		int from = filter.fromMinute;
+		int to = filter.toMinute;
+		int mask = filter.flagMask;
+		int value = filter.flagValue;
+		int count = 0;
+		for (int i = 0; i < this.size; i++) {
+			int start = starts[i];
+			if (start >= from && start < to && (flags[i] & mask) == value) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Sums the total minutes of the cases that pass the filter.
+	 *
+	 * @param filter
+	 *            the cases to sum
+	 * @return the sum of the total minutes, 0 if no case passes
+	 */
+	public long sum(Filter filter) {
+		int[] starts = this.starts;
+		int[] totals = this.totals;
+		byte[] flags = this.flags;
+		int from = filter.fromMinute;
+		int to = filter.toMinute;
+		int mask = filter.flagMask;
+		int value = filter.flagValue;
+		long sum = 0;
+		for (int i = 0; i < this.size; i++) {
+			int start = starts[i];
+			if (start >= from && start < to && (flags[i] & mask) == value) {
+				sum += totals[i];
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Gets the smallest total minutes of the cases that pass the filter.
+	 *
+	 * @param filter
+	 *            the cases to look at
+	 * @return the smallest total, Integer.MAX_VALUE if no case passes
+	 */
+	public int min(Filter filter) {
+		int[] starts = this.starts;
+		int[] totals = this.totals;
+		byte[] flags = this.flags;
+		int from = filter.fromMinute;
+		int to = filter.toMinute;
+		int mask = filter.flagMask;
+		int value = filter.flagValue;
+		int min = Integer.MAX_VALUE;
+		for (int i = 0; i < this.size; i++) {
+			int start = starts[i];
+			if (start >= from && start < to && (flags[i] & mask) == value) {
+				min = Math.min(min, totals[i]);
+			}
+		}
+		return min;
+	}
+
+	/**
+	 * Gets the largest total minutes of the cases that pass the filter.
+	 *
+	 * @param filter
+	 *            the cases to look at
+	 * @return the largest total, Integer.MIN_VALUE if no case passes
+	 */
+	public int max(Filter filter) {
+		int[] starts = this.starts;
+		int[] totals = this.totals;
+		byte[] flags = this.flags;
+		int from = filter.fromMinute;
+		int to = filter.toMinute;
+		int mask = filter.flagMask;
+		int value = filter.flagValue;
+		int max = Integer.MIN_VALUE;
+		for (int i = 0; i < this.size; i++) {
+			int start = starts[i];
+			if (start >= from && start < to && (flags[i] & mask) == value) {
+				max = Math.max(max, totals[i]);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Gets the total minutes at or below which the given percent of the cases
+	 * that pass the filter fall (nearest rank).
+	 *
+	 * @param filter
+	 *            the cases to look at
+	 * @param percentile
+	 *            the percent, from 0 to 100
+	 * @return the total minutes at that percentile
+	 * @throws IllegalArgumentException
+	 *             if no case passes the filter
+	 */
+	public int percentile(Filter filter, double percentile) {
+		int[] sorted = sortedTotals(filter);
+		if (sorted.length == 0) {
+			throw new IllegalArgumentException("No cases pass the filter");
+		}
+		return sorted[rank(sorted.length, percentile)];
+	}
+
+	/**
+	 * Describes the cases that pass the filter: their number, the sum, smallest
+	 * and largest of their total minutes and the 50th, 90th and 99th
+	 * percentiles.
+	 *
+	 * @param filter
+	 *            the cases to describe
+	 * @return a single line of text
+	 */
+	public String describe(Filter filter) {
+		int[] sorted = sortedTotals(filter);
+		StringBuilder text = new StringBuilder();
+		text.append(sorted.length).append(" cases");
+		if (sorted.length > 0) {
+			long sum = 0;
+			for (int total : sorted) {
+				sum += total;
+			}
+			text.append(", ").append(sum).append(" minutes, min ").append(sorted[0]);
+			for (double percentile : PERCENTILES) {
+				text.append(", p").append((int) percentile).append(' ')
+						.append(sorted[rank(sorted.length, percentile)]);
+			}
+			text.append(", max ").append(sorted[sorted.length - 1]);
+		}
+		return text.toString();
+	}
+
+	/*
+	 * Gets the total minutes of the cases that pass the filter, in order.
+	 */
+	private int[] sortedTotals(Filter filter) {
+		int[] matched = new int[count(filter)];
+		int at = 0;
+		for (int i = 0; i < this.size; i++) {
+			if (filter.accepts(this.starts[i], this.flags[i])) {
+				matched[at++] = this.totals[i];
+			}
+		}
+		Arrays.sort(matched);
+		return matched;
+	}
+
+	/*
+	 * Gets the index of the nearest rank of a percentile.
+	 */
+	private static int rank(int length, double percentile) {
+		int rank = (int) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100 * length);
+		return Math.max(rank, 1) - 1;
+	}
+
+	/*
+	 * Throws if a start or stop does not fit in a column.
+	 */
+	private static void checkMinutes(long startMinute, long stopMinute) {
+		if (startMinute != (int) startMinute || stopMinute != (int) stopMinute) {
+			throw new IllegalArgumentException("Case is outside the years a CaseStore holds");
+		}
+	}
+
+	/*
+	 * Throws if there is no case at the index.
+	 */
+	private void checkIndex(int index) {
+		if (index < 0 || index >= this.size) {
+			throw new IndexOutOfBoundsException("Case " + index + " of " + this.size);
+		}
+	}
+
+	/*
+	 * Grows the columns to hold at least the given number of cases.
+	 */
+	private void ensureCapacity(int cases) {
+		if (cases <= this.starts.length) {
+			return;
+		}
+		int capacity = Math.max(cases, this.starts.length * 2);
+		this.starts = Arrays.copyOf(this.starts, capacity);
+		this.stops = Arrays.copyOf(this.stops, capacity);
+		this.totals = Arrays.copyOf(this.totals, capacity);
+		this.days = Arrays.copyOf(this.days, capacity);
+		this.flags = Arrays.copyOf(this.flags, capacity);
+	}
+
+	/**
+	 * Loads every record of a CaseLog and describes all of them and the
+	 * multi-day cases.
+	 *
+	 * @param args
+	 *            the path of the case log
+	 */
+	public static void main(String[] args) {
+		if (args.length != 1) {
+			System.err.println("Usage: CaseStore <case log>");
+			System.exit(2);
+		}
+		CaseStore store = new CaseStore();
+		try {
+			CaseLog.replay(Paths.get(args[0]), store);
+		} catch (IOException e) {
+			System.err.println("Could not read the case log: " + e.getMessage());
+			System.exit(1);
+		}
+		System.out.println("all:       " + store.describe(Filter.ALL));
+		System.out.println("multi-day: " + store.describe(Filter.ALL.multiDay()));
+	}
+
+	/**
+	 * Filter chooses the cases a scan looks at: those that started within a
+	 * window of minutes, and optionally only the multi-day or single-day cases.
+	 * A Filter is immutable; each narrowing makes a new one.
+	 */
+	public static final class Filter {
+
+		/** Filter passing every case */
+		public static final Filter ALL = new Filter(Integer.MIN_VALUE, Integer.MAX_VALUE, 0, 0);
+
+		/* First start minute passed */
+		private final int fromMinute;
+		/* Start minute after the last passed */
+		private final int toMinute;
+		/* Flags that are checked */
+		private final int flagMask;
+		/* Value the checked flags must have */
+		private final int flagValue;
+		/* Number of minutes in a day */
+		private final static int MIN_PER_DAY = 1440;
+
+		/*
+		 * Constructs a new Filter.
+		 */
+		private Filter(int fromMinute, int toMinute, int flagMask, int flagValue) {
+			this.fromMinute = fromMinute;
+			this.toMinute = toMinute;
+			this.flagMask = flagMask;
+			this.flagValue = flagValue;
+		}
+
+		/**
+		 * Narrows the filter to the cases that started within a window of
+		 * minutes.
+		 *
+		 * @param fromMinute
+		 *            first start passed, minutes since 1970-01-01 00:00
+		 * @param toMinute
+		 *            start after the last passed, minutes since 1970-01-01 00:00
+		 * @return the narrowed filter
+		 */
+		public Filter startedBetween(int fromMinute, int toMinute) {
+			return new Filter(fromMinute, toMinute, this.flagMask, this.flagValue);
+		}
+
+		/**
+		 * Narrows the filter to the cases that started within a window of days.
+		 *
+		 * @param fromEpochDay
+		 *            first day passed, days since 1970-01-01
+		 * @param toEpochDay
+		 *            last day passed, days since 1970-01-01
+		 * @return the narrowed filter
+		 */
+		public Filter startedOnDays(int fromEpochDay, int toEpochDay) {
+			return startedBetween(toColumn((long) fromEpochDay * MIN_PER_DAY),
+					toColumn(((long) toEpochDay + 1) * MIN_PER_DAY));
+		}
+
+		/**
+		 * Narrows the filter to the multi-day cases.
+		 *
+		 * @return the narrowed filter
+		 */
+		public Filter multiDay() {
+			return new Filter(this.fromMinute, this.toMinute, MULTI_FLAG, MULTI_FLAG);
+		}
+
+		/**
+		 * Narrows the filter to the single-day cases.
+		 *
+		 * @return the narrowed filter
+		 */
+		public Filter singleDay() {
+			return new Filter(this.fromMinute, this.toMinute, MULTI_FLAG, 0);
+		}
+
+		/*
+		 * Clamps a minute to the int range the start column holds, so a window
+		 * reaching past it still passes the starts inside it.
+		 */
+		private static int toColumn(long minute) {
+			return (int) Math.min(Math.max(minute, Integer.MIN_VALUE), Integer.MAX_VALUE);
+		}
+
+		/*
+		 * Does a case with the given start and flags pass?
+		 */
+		boolean accepts(int startMinute, byte flags) {
+			return startMinute >= this.fromMinute && startMinute < this.toMinute
+					&& (flags & this.flagMask) == this.flagValue;
+		}
+	}
+}
@@ -0,0 +1,366 @@
+package store;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.text.DateFormatSymbols;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import main.CalendarYear;
+import main.ChargeTime;
+import main.DailyMinutes;
+
+/**
+ * ChargeIndex totals perfusion minutes by calendar day, for the whole
+ * department and for each room, so billing can ask for the minutes of any day,
+ * month or window of dates. Each case is split at midnight into its minutes on
+ * each day, and every day is a slot in primitive arrays indexed by epoch day:
+ * one array holds the minutes of each day and a Fenwick tree over the same
+ * days answers the sum of any range of days in O(log n). Adding a case costs
+ * O(log n) per day it ran on.
+ *
+ * The index covers a fixed range of years chosen when it is made. It is not
+ * safe for use by more than one thread at once.
+ *
+ * @author Kimberle McGill
+ * @version 1.2.261018
+ */
+public class ChargeIndex {
+
+	/* Epoch day of the first day covered */
+	private final int firstEpochDay;
+	/* Number of days covered */
+	private final int length;
+	/* Totals of every case */
+	private final Totals department;
+	/* Totals of the cases of each room */
+	private final Map<String, Totals> rooms = new HashMap<String, Totals>();
+	/* Number of cases added */
+	private long cases;
+	/* Number of minutes in a day */
+	private final static int MIN_PER_DAY = 1440;
+	/* Number of minutes in an hour */
+	private final static int MIN_PER_HOUR = 60;
+	/* Number of months in a year */
+	private final static int MONTHS_IN_YEAR = 12;
+
+	/**
+	 * Constructs a new, empty ChargeIndex covering the given years.
+	 *
+	 * @param firstYear
+	 *            the first year covered
+	 * @param lastYear
+	 *            the last year covered
+	 * @throws IllegalArgumentException
+	 *             if the last year is before the first year
+	 */
+	public ChargeIndex(int firstYear, int lastYear) {
+		if (lastYear < firstYear) {
+			throw new IllegalArgumentException("Last year is before first year");
+		}
+		this.firstEpochDay = CalendarYear.of(firstYear).firstEpochDay();
+		CalendarYear last = CalendarYear.of(lastYear);
+		this.length = last.firstEpochDay() + last.lengthOfYear() - this.firstEpochDay;
+		this.department = new Totals(this.length);
+	}
+
+	/**
+	 * Adds the minutes of a calculated case, for the department and the given
+	 * room. The minutes of each day are taken from the charge's own per-day
+	 * breakdown, so a charge calculated in a time zone adds the minutes that
+	 * actually passed on the days the clocks change, and the days add up to
+	 * its total. A charge of no minutes adds nothing.
+	 *
+	 * @param room
+	 *            the room of the case, or null if not known
+	 * @param charge
+	 *            the calculated charges
+	 * @throws IllegalArgumentException
+	 *             if the case ran on a day outside the index
+	 */
+	public void add(String room, ChargeTime charge) {
+		this.cases++;
+		if (charge.getTotalMinutes() <= 0) {
+			return;
+		}
+		long startDay = Math.floorDiv(charge.getStartEpochMinute(), MIN_PER_DAY);
+		// a charge stopping at midnight has nothing on its last day
+		long stopDay = Math.floorDiv(charge.getStopEpochMinute() - 1, MIN_PER_DAY);
+		checkDays(startDay, stopDay);
+		Totals roomTotals = roomTotals(room);
+
+		int index = (int) (startDay - this.firstEpochDay);
+		for (DailyMinutes daily = charge.getDailyMinutes(); daily.hasNext(); index++) {
+			int minutes = daily.nextInt();
+			if (minutes != 0) {
+				this.department.add(index, minutes);
+				if (roomTotals != null) {
+					roomTotals.add(index, minutes);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the minutes of a case from its start and stop, for the department
+	 * and the given room. A case that stops before it starts adds nothing.
+	 * The case is split at midnight on the wall clock, so a case across a
+	 * night the clocks change adds the wall clock minutes; add the ChargeTime
+	 * to add the minutes charged in its time zone.
+	 *
+	 * @param room
+	 *            the room of the case, or null if not known
+	 * @param startMinute
+	 *            start, minutes since 1970-01-01 00:00
+	 * @param stopMinute
+	 *            stop, minutes since 1970-01-01 00:00
+	 * @throws IllegalArgumentException
+	 *             if the case ran on a day outside the index
+	 */
+	public void add(String room, long startMinute, long stopMinute) {
+		this.cases++;
+		if (stopMinute <= startMinute) {
+			return;
+		}
+		long startDay = Math.floorDiv(startMinute, MIN_PER_DAY);
+		long stopDay = Math.floorDiv(stopMinute - 1, MIN_PER_DAY);
+		checkDays(startDay, stopDay);
+		Totals roomTotals = roomTotals(room);
+
+		// first day from the start to midnight, whole days, last day from midnight
+		long from = startMinute;
+		for (long day = startDay; day <= stopDay; day++) {
+			long to = Math.min((day + 1) * MIN_PER_DAY, stopMinute);
+			int index = (int) (day - this.firstEpochDay);
+			this.department.add(index, to - from);
+			if (roomTotals != null) {
+				roomTotals.add(index, to - from);
+			}
+			from = to;
+		}
+	}
+
+	/**
+	 * Gets the number of cases added.
+	 *
+	 * @return the number of cases
+	 */
+	public long getCases() {
+		return this.cases;
+	}
+
+	/**
+	 * Gets the rooms that have cases.
+	 *
+	 * @return the rooms
+	 */
+	public Set<String> getRooms() {
+		return Collections.unmodifiableSet(this.rooms.keySet());
+	}
+
+	/**
+	 * Gets the minutes charged on one day for the department.
+	 *
+	 * @param epochDay
+	 *            the day, as days since 1970-01-01
+	 * @return the minutes charged on the day
+	 */
+	public long getDayMinutes(int epochDay) {
+		return getDayMinutes(null, epochDay);
+	}
+
+	/**
+	 * Gets the minutes charged on one day in the given room.
+	 *
+	 * @param room
+	 *            the room, or null for the department
+	 * @param epochDay
+	 *            the day, as days since 1970-01-01
+	 * @return the minutes charged on the day, 0 outside the index
+	 */
+	public long getDayMinutes(String room, int epochDay) {
+		Totals totals = totals(room);
+		int index = epochDay - this.firstEpochDay;
+		if (totals == null || index < 0 || index >= this.length) {
+			return 0;
+		}
+		return totals.daily[index];
+	}
+
+	/**
+	 * Gets the minutes charged from one day through another for the department.
+	 *
+	 * @param fromEpochDay
+	 *            the first day, as days since 1970-01-01
+	 * @param toEpochDay
+	 *            the last day, as days since 1970-01-01
+	 * @return the minutes charged on those days
+	 */
+	public long getMinutes(int fromEpochDay, int toEpochDay) {
+		return getMinutes(null, fromEpochDay, toEpochDay);
+	}
+
+	/**
+	 * Gets the minutes charged from one day through another in the given room.
+	 * Days outside the index count as none.
+	 *
+	 * @param room
+	 *            the room, or null for the department
+	 * @param fromEpochDay
+	 *            the first day, as days since 1970-01-01
+	 * @param toEpochDay
+	 *            the last day, as days since 1970-01-01
+	 * @return the minutes charged on those days
+	 */
+	public long getMinutes(String room, int fromEpochDay, int toEpochDay) {
+		Totals totals = totals(room);
+		int from = Math.max(fromEpochDay - this.firstEpochDay, 0);
+		int to = Math.min(toEpochDay - this.firstEpochDay, this.length - 1);
+		if (totals == null || from > to) {
+			return 0;
+		}
+		return totals.sumThrough(to) - totals.sumThrough(from - 1);
+	}
+
+	/**
+	 * Gets the minutes charged in one month for the department.
+	 *
+	 * @param year
+	 *            the year
+	 * @param month
+	 *            month of the year (1-12)
+	 * @return the minutes charged in the month
+	 */
+	public long getMonthMinutes(int year, int month) {
+		return getMonthMinutes(null, year, month);
+	}
+
+	/**
+	 * Gets the minutes charged in one month in the given room.
+	 *
+	 * @param room
+	 *            the room, or null for the department
+	 * @param year
+	 *            the year
+	 * @param month
+	 *            month of the year (1-12)
+	 * @return the minutes charged in the month
+	 */
+	public long getMonthMinutes(String room, int year, int month) {
+		CalendarYear calendar = CalendarYear.of(year);
+		int first = calendar.epochDay(month, 1);
+		return getMinutes(room, first, first + calendar.lengthOfMonth(month) - 1);
+	}
+
+	/*
+	 * Throws if a case ran on a day outside the index.
+	 */
+	private void checkDays(long startDay, long stopDay) {
+		if (startDay < this.firstEpochDay || stopDay >= this.firstEpochDay + this.length) {
+			throw new IllegalArgumentException("Case is outside the dates of the index");
+		}
+	}
+
+	/*
+	 * Returns the totals of a room, made if it has none yet, or null for no
+	 * room.
+	 */
+	private Totals roomTotals(String room) {
+		if (room == null) {
+			return null;
+		}
+		Totals roomTotals = this.rooms.get(room);
+		if (roomTotals == null) {
+			roomTotals = new Totals(this.length);
+			this.rooms.put(room, roomTotals);
+		}
+		return roomTotals;
+	}
+
+	/*
+	 * Returns the totals of a room, the department for null, or null if the
+	 * room has no cases.
+	 */
+	private Totals totals(String room) {
+		return room == null ? this.department : this.rooms.get(room);
+	}
+
+	/*
+	 * Minutes of each day and a Fenwick tree of the same minutes.
+	 */
+	private static final class Totals {
+
+		/* Minutes of each day */
+		final long[] daily;
+		/* Fenwick tree, one based */
+		final long[] tree;
+
+		/*
+		 * Constructs empty totals for the given number of days.
+		 */
+		Totals(int length) {
+			this.daily = new long[length];
+			this.tree = new long[length + 1];
+		}
+
+		/*
+		 * Adds minutes to a day.
+		 */
+		void add(int index, long minutes) {
+			this.daily[index] += minutes;
+			for (int i = index + 1; i < this.tree.length; i += i & -i) {
+				this.tree[i] += minutes;
+			}
+		}
+
+		/*
+		 * Returns the minutes of the days from the first through index.
+		 */
+		long sumThrough(int index) {
+			long sum = 0;
+			for (int i = index + 1; i > 0; i -= i & -i) {
+				sum += this.tree[i];
+			}
+			return sum;
+		}
+	}
+
+	/**
+	 * Main method which replays a case log into an index and prints the minutes
+	 * of each month of the given years.
+	 *
+	 * @param args
+	 *            the case log, the first year and the last year
+	 */
+	public static void main(String[] args) {
+		if (args.length != 3) {
+			System.err.println("Usage: ChargeIndex caselog firstYear lastYear");
+			System.exit(1);
+		}
+		int firstYear = Integer.parseInt(args[1]);
+		int lastYear = Integer.parseInt(args[2]);
+		final ChargeIndex index = new ChargeIndex(firstYear, lastYear);
+		try {
+			CaseLog.replay(Paths.get(args[0]), (startMinute, stopMinute, multi, totalMinutes, numberOfDays) -> {
+				index.add(null, startMinute, stopMinute);
+			});
+		} catch (IOException | IllegalArgumentException e) {
+			System.err.println("Could not index the case log: " + e.getMessage());
+			System.exit(1);
+		}
+
+		String[] months = new DateFormatSymbols().getMonths();
+		System.out.println(index.getCases() + " cases");
+		for (int year = firstYear; year <= lastYear; year++) {
+			for (int month = 1; month <= MONTHS_IN_YEAR; month++) {
+				long minutes = index.getMonthMinutes(year, month);
+				if (minutes > 0) {
+					System.out.println(String.format("%s %d: \t%d minutes (%d hours, %d minutes)", months[month - 1],
+							year, minutes, minutes / MIN_PER_HOUR, minutes % MIN_PER_HOUR));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,363 @@
+package store;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import main.ChargeCache;
+import main.ChargeCalculator;
+import main.ChargeError;
+import main.ChargeTime;
+import main.ChargeValidator;
+
+/**
+ * OverlapDetector finds cases that overlap in time on the same key (a pump,
+ * a room or a patient), for billing audits. Cases are added with their key,
+ * case id and start and stop minutes, and detect hands every overlapping pair
+ * to a ConflictVisitor as soon as it is found.
+ *
+ * Detection is a sort and sweep. The cases are grouped by key with a counting
+ * sort, then sorted by start within each key as packed longs (start in the
+ * high half, case index in the low half), so no object is made per case. Each
+ * key is then swept in start order, keeping the cases still running in a heap
+ * ordered by stop: a case overlaps exactly the running cases that stop after
+ * it starts. The whole run is O(n log n) plus one step per conflict reported.
+ *
+ * A case runs from its start up to, not including, its stop, so a case that
+ * starts the minute another stops does not overlap it. Cases that stop at or
+ * before their start are kept but never overlap. Minutes are kept as ints, as
+ * in CaseStore. An OverlapDetector is not safe for use by more than one thread
+ * at once.
+ *
+ * @author Kimberle McGill
+ * @version 1.2.261018
+ */
+public class OverlapDetector {
+
+	/* Key of each case, as an index into keys */
+	private int[] keyIndexes;
+	/* Start of each case, minutes since 1970-01-01 00:00 */
+	private int[] starts;
+	/* Stop of each case, minutes since 1970-01-01 00:00 */
+	private int[] stops;
+	/* Id of each case */
+	private String[] caseIds;
+	/* Number of cases */
+	private int size;
+	/* Keys, in the order first seen */
+	private final List<String> keys = new ArrayList<String>();
+	/* Index of each key in keys */
+	private final Map<String, Integer> keyIndex = new HashMap<String, Integer>();
+	/* Cases held before the arrays first grow */
+	private final static int INITIAL_CASES = 1024;
+	/* Bits to shift a start or stop above a case index */
+	private final static int INDEX_BITS = 32;
+	/* Mask of the case index in a packed long */
+	private final static long INDEX_MASK = 0xFFFFFFFFL;
+	/* Number of fields in an input row, the multi-day flag last and optional */
+	private final static int FIELDS = 5;
+	/* Index of the key field */
+	private final static int KEY = 0;
+	/* Index of the case id field */
+	private final static int CASE_ID = 1;
+	/* Index of the start field */
+	private final static int START = 2;
+	/* Index of the stop field */
+	private final static int STOP = 3;
+	/* Index of the multi-day field */
+	private final static int MULTI = 4;
+
+	/**
+	 * Receives the overlapping cases found by detect.
+	 */
+	public interface ConflictVisitor {
+
+		/**
+		 * Receives one pair of overlapping cases. The earlier case is first.
+		 *
+		 * @param key
+		 *            the key both cases are on
+		 * @param firstCaseId
+		 *            id of the case that started first
+		 * @param secondCaseId
+		 *            id of the case that started second
+		 * @param overlapStart
+		 *            start of the overlap, minutes since 1970-01-01 00:00
+		 * @param overlapStop
+		 *            stop of the overlap, minutes since 1970-01-01 00:00
+		 */
+		void conflict(String key, String firstCaseId, String secondCaseId, int overlapStart, int overlapStop);
+	}
+
+	/**
+	 * Constructs a new, empty OverlapDetector.
+	 */
+	public OverlapDetector() {
+		this.keyIndexes = new int[INITIAL_CASES];
+		this.starts = new int[INITIAL_CASES];
+		this.stops = new int[INITIAL_CASES];
+		this.caseIds = new String[INITIAL_CASES];
+	}
+
+	/**
+	 * Adds a case.
+	 *
+	 * @param key
+	 *            the pump, room or patient of the case
+	 * @param caseId
+	 *            the id of the case, reported with its conflicts
+	 * @param startMinute
+	 *            start, minutes since 1970-01-01 00:00
+	 * @param stopMinute
+	 *            stop, minutes since 1970-01-01 00:00
+	 */
+	public void add(String key, String caseId, int startMinute, int stopMinute) {
+		Integer index = this.keyIndex.get(key);
+		if (index == null) {
+			index = this.keys.size();
+			this.keys.add(key);
+			this.keyIndex.put(key, index);
+		}
+		if (this.size == this.starts.length) {
+			int capacity = this.size * 2;
+			this.keyIndexes = Arrays.copyOf(this.keyIndexes, capacity);
+			this.starts = Arrays.copyOf(this.starts, capacity);
+			this.stops = Arrays.copyOf(this.stops, capacity);
+			this.caseIds = Arrays.copyOf(this.caseIds, capacity);
+		}
+		this.keyIndexes[this.size] = index;
+		this.starts[this.size] = startMinute;
+		this.stops[this.size] = stopMinute;
+		this.caseIds[this.size] = caseId;
+		this.size++;
+	}
+
+	/**
+	 * Adds a calculated case.
+	 *
+	 * @param key
+	 *            the pump, room or patient of the case
+	 * @param caseId
+	 *            the id of the case, reported with its conflicts
+	 * @param charge
+	 *            the calculated charges
+	 * @throws IllegalArgumentException
+	 *             if the charge is outside the years an OverlapDetector holds
+	 */
+	public void add(String key, String caseId, ChargeTime charge) {
+		long startMinute = charge.getStartEpochMinute();
+		long stopMinute = charge.getStopEpochMinute();
+		if (startMinute != (int) startMinute || stopMinute != (int) stopMinute) {
+			throw new IllegalArgumentException("Case is outside the years an OverlapDetector holds");
+		}
+		add(key, caseId, (int) startMinute, (int) stopMinute);
+	}
+
+	/**
+	 * Gets the number of cases.
+	 *
+	 * @return the number of cases
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Gets the number of keys.
+	 *
+	 * @return the number of different keys of the cases
+	 */
+	public int getKeyCount() {
+		return this.keys.size();
+	}
+
+	/**
+	 * Finds every pair of cases on the same key that overlap, handing each pair
+	 * to the visitor as it is found. Keys are swept in the order they were
+	 * first added, and the pairs of a key in the order the second case starts.
+	 *
+	 * @param visitor
+	 *            receives each pair of overlapping cases
+	 * @return the number of pairs found
+	 */
+	public long detect(ConflictVisitor visitor) {
+		int keyCount = this.keys.size();
+
+		// group the cases by key: offsets of each key, then cases in key order
+		int[] offsets = new int[keyCount + 1];
+		for (int i = 0; i < this.size; i++) {
+			offsets[this.keyIndexes[i] + 1]++;
+		}
+		for (int k = 0; k < keyCount; k++) {
+			offsets[k + 1] += offsets[k];
+		}
+		long[] sorted = new long[this.size];
+		int[] next = Arrays.copyOf(offsets, keyCount);
+		for (int i = 0; i < this.size; i++) {
+			sorted[next[this.keyIndexes[i]]++] = pack(this.starts[i], i);
+		}
+
+		// sort each key by start, then sweep it
+		long[] running = new long[INITIAL_CASES];
+		long conflicts = 0;
+		for (int k = 0; k < keyCount; k++) {
+			Arrays.sort(sorted, offsets[k], offsets[k + 1]);
+			int runningCount = 0;
+			String key = this.keys.get(k);
+			for (int s = offsets[k]; s < offsets[k + 1]; s++) {
+				int index = (int) (sorted[s] & INDEX_MASK);
+				int start = this.starts[index];
+				int stop = this.stops[index];
+				if (stop <= start) {
+					continue;
+				}
+
+				// the cases that stopped by now are done
+				while (runningCount > 0 && (int) (running[0] >> INDEX_BITS) <= start) {
+					runningCount = removeFirst(running, runningCount);
+				}
+				for (int r = 0; r < runningCount; r++) {
+					int other = (int) (running[r] & INDEX_MASK);
+					visitor.conflict(key, this.caseIds[other], this.caseIds[index], start,
+							Math.min(stop, this.stops[other]));
+				}
+				conflicts += runningCount;
+				if (runningCount == running.length) {
+					running = Arrays.copyOf(running, running.length * 2);
+				}
+				runningCount = add(running, runningCount, pack(stop, index));
+			}
+		}
+		return conflicts;
+	}
+
+	/*
+	 * Packs a minute above a case index, so packed longs sort by minute and then
+	 * by case index.
+	 */
+	private static long pack(int minute, int index) {
+		return ((long) minute << INDEX_BITS) | index;
+	}
+
+	/*
+	 * Adds a value to a binary min-heap of the given size, returning the new
+	 * size.
+	 */
+	private static int add(long[] heap, int size, long value) {
+		int at = size;
+		while (at > 0) {
+			int parent = (at - 1) >>> 1;
+			if (heap[parent] <= value) {
+				break;
+			}
+			heap[at] = heap[parent];
+			at = parent;
+		}
+		heap[at] = value;
+		return size + 1;
+	}
+
+	/*
+	 * Removes the least value of a binary min-heap of the given size, returning
+	 * the new size.
+	 */
+	private static int removeFirst(long[] heap, int size) {
+		int last = size - 1;
+		long value = heap[last];
+		int at = 0;
+		while (true) {
+			int child = 2 * at + 1;
+			if (child >= last) {
+				break;
+			}
+			if (child + 1 < last && heap[child + 1] < heap[child]) {
+				child++;
+			}
+			if (value <= heap[child]) {
+				break;
+			}
+			heap[at] = heap[child];
+			at = child;
+		}
+		heap[at] = value;
+		return last;
+	}
+
+	/**
+	 * Main method which reads case rows (key, case id, start, stop and an
+	 * optional multi-day flag, separated by commas) and writes one line per
+	 * pair of overlapping cases as they are found: the key, both case ids and
+	 * the overlap in "yyyyMMdd HHmm". Entries in the form of "MMdd HHmm" take
+	 * their stop date to be in this year. Rows that cannot be calculated are
+	 * reported and skipped.
+	 *
+	 * @param args
+	 *            the case file
+	 */
+	public static void main(String[] args) {
+		if (args.length != 1) {
+			System.err.println("Usage: OverlapDetector <cases file>");
+			System.exit(2);
+		}
+		OverlapDetector detector = new OverlapDetector();
+		int year = LocalDate.now().getYear();
+		try (BufferedReader in = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+			long lineNumber = 0;
+			String line;
+			while ((line = in.readLine()) != null) {
+				lineNumber++;
+				String[] fields = line.split(",", -1);
+				if (line.trim().isEmpty() || line.charAt(0) == '#'
+						|| (lineNumber == 1 && fields.length > START && !startsWithDigit(fields[START].trim()))) {
+					continue;
+				}
+				if (fields.length < MULTI || fields.length > FIELDS) {
+					System.err.println("line " + lineNumber + ": Wrong number of fields");
+					continue;
+				}
+				int multi = ChargeValidator.parseMulti(fields.length == FIELDS ? fields[MULTI].trim() : "");
+				if (multi == ChargeCalculator.INVALID) {
+					System.err.println("line " + lineNumber + ": " + ChargeError.MULTI_FLAG.getMessage());
+					continue;
+				}
+				try {
+					detector.add(fields[KEY].trim(), fields[CASE_ID].trim(), ChargeCache.shared()
+							.get(fields[START].trim(), fields[STOP].trim(), multi == ChargeValidator.MULTI_DAY, year));
+				} catch (IllegalArgumentException e) {
+					System.err.println("line " + lineNumber + ": " + e.getMessage());
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Could not read the cases: " + e.getMessage());
+			System.exit(1);
+		}
+
+		PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+		out.println("key,first_case,second_case,overlap_start,overlap_stop,overlap_minutes");
+		long conflicts = detector.detect((key, first, second, overlapStart, overlapStop) -> {
+			out.println(key + "," + first + "," + second + "," + ChargeCalculator.formatDateTime(overlapStart) + ","
+					+ ChargeCalculator.formatDateTime(overlapStop) + "," + (overlapStop - overlapStart));
+		});
+		out.flush();
+		System.err.println(detector.size() + " cases on " + detector.getKeyCount() + " keys, " + conflicts
+				+ " overlapping pairs");
+	}
+
+	/*
+	 * Does the text start with a digit?
+	 */
+	private static boolean startsWithDigit(String text) {
+		return !text.isEmpty() && Character.isDigit(text.charAt(0));
+	}
+}
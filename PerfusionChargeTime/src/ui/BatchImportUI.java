@@ -0,0 +1,385 @@
+package ui;
+
+import java.awt.BorderLayout;
+import java.awt.Toolkit;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.*;
+
+import batch.CaseRow;
+
+/**
+ * BatchImportUI is the screen for calculating many cases at once. Cases are
+ * pasted or opened from a file, one per line as case id, start, stop and
+ * multi-day flag separated by commas or tabs, and are read by a CaseRow,
+ * exactly as the batch calculation reads them. They are calculated on a
+ * background thread while the table fills in. The results can be exported in
+ * the batch results layout.
+ *
+ * @author Kimberle McGill
+ * @version 1.2.261018
+ */
+public class BatchImportUI extends JFrame implements ActionListener {
+
+	/** ID number used for object serialization. */
+	private static final long serialVersionUID = 1L;
+	/** Imported cases */
+	private final CaseTableModel model = new CaseTableModel();
+	/** Table of the imported cases */
+	private JTable table;
+	/** Progress of the import or export */
+	private JProgressBar progressBar;
+	/** Number of cases and errors */
+	private JLabel lblStatus;
+	/** Button to open a case file */
+	private JButton btnOpen;
+	/** Button to paste cases */
+	private JButton btnPaste;
+	/** Button to export the results */
+	private JButton btnExport;
+	/** Button to cancel the import or export */
+	private JButton btnCancel;
+	/** Button to clear the table */
+	private JButton btnClear;
+	/** Chooses the files to open and export */
+	private JFileChooser chooser;
+	/** Import or export in progress, null if there is none */
+	private SwingWorker<?, ?> worker;
+	/** Width of the window */
+	private static final int FRAME_WIDTH = 800;
+	/** Height of the window */
+	private static final int FRAME_HEIGHT = 600;
+	/** Rows calculated before they are added to the table */
+	private static final int BLOCK_ROWS = 2048;
+	/** Size of the read and write buffers */
+	private static final int BUFFER_SIZE = 1 << 16;
+	/** Percent for a finished import or export */
+	private static final int DONE = 100;
+	/** Title of the window */
+	private static final String TITLE = "Perfusion Charges - Batch Import";
+
+	/**
+	 * Creates a new BatchImportUI. Must be called on the event dispatch thread.
+	 */
+	public BatchImportUI() {
+		super(TITLE);
+		setSize(FRAME_WIDTH, FRAME_HEIGHT);
+		setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+
+		// table of the cases, only the rows in view are ever rendered
+		table = new JTable(model);
+		table.setFillsViewportHeight(true);
+		table.setAutoCreateRowSorter(false);
+		JScrollPane scrollPane = new JScrollPane(table);
+
+		// buttons along the top
+		JPanel pnlButtons = new JPanel();
+		btnOpen = new JButton("OPEN...");
+		btnPaste = new JButton("PASTE");
+		btnExport = new JButton("EXPORT...");
+		btnClear = new JButton("CLEAR");
+		btnCancel = new JButton("CANCEL");
+		for (JButton button : new JButton[] { btnOpen, btnPaste, btnExport, btnClear, btnCancel }) {
+			button.addActionListener(this);
+			pnlButtons.add(button);
+		}
+
+		// progress and counts along the bottom
+		JPanel pnlStatus = new JPanel(new BorderLayout());
+		progressBar = new JProgressBar(0, DONE);
+		progressBar.setStringPainted(true);
+		lblStatus = new JLabel(" ");
+		pnlStatus.add(lblStatus, BorderLayout.CENTER);
+		pnlStatus.add(progressBar, BorderLayout.EAST);
+
+		getContentPane().add(pnlButtons, BorderLayout.NORTH);
+		getContentPane().add(scrollPane, BorderLayout.CENTER);
+		getContentPane().add(pnlStatus, BorderLayout.SOUTH);
+
+		// stop any work when the window is closed
+		addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosed(WindowEvent e) {
+				cancel();
+			}
+		});
+
+		chooser = new JFileChooser();
+		setWorking(null);
+	}
+
+	/**
+	 * Performs an action based on the given ActionEvent.
+	 *
+	 * @param e
+	 *            user event that triggers an action.
+	 */
+	@Override
+	public void actionPerformed(ActionEvent e) {
+		if (e.getSource() == btnOpen) {
+			if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+				File file = chooser.getSelectedFile();
+				try {
+					startImport(Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8), file.length());
+				} catch (IOException ex) {
+					showError("Could not open " + file.getName() + "\n" + ex.getMessage());
+				}
+			}
+		} else if (e.getSource() == btnPaste) {
+			try {
+				String text = (String) Toolkit.getDefaultToolkit().getSystemClipboard()
+						.getData(DataFlavor.stringFlavor);
+				startImport(new StringReader(text), text.length());
+			} catch (UnsupportedFlavorException | IOException ex) {
+				showError("The clipboard does not hold any text");
+			}
+		} else if (e.getSource() == btnExport) {
+			if (chooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+				startExport(chooser.getSelectedFile());
+			}
+		} else if (e.getSource() == btnClear) {
+			model.clear();
+			updateStatus();
+		} else if (e.getSource() == btnCancel) {
+			cancel();
+		}
+	}
+
+	/**
+	 * Starts calculating the cases read from the given input in the background.
+	 */
+	private void startImport(Reader in, long length) {
+		ImportWorker importer = new ImportWorker(in, length, LocalDate.now().getYear());
+		setWorking(importer);
+		importer.execute();
+	}
+
+	/**
+	 * Starts writing the results to the given file in the background.
+	 */
+	private void startExport(File file) {
+		ExportWorker exporter = new ExportWorker(file, model.getRowCount());
+		setWorking(exporter);
+		exporter.execute();
+	}
+
+	/**
+	 * Cancels the import or export in progress, if there is one.
+	 */
+	private void cancel() {
+		if (worker != null) {
+			worker.cancel(true);
+			setWorking(null);
+		}
+	}
+
+	/**
+	 * Records the work in progress and enables the buttons that may be used
+	 * while it runs.
+	 */
+	private void setWorking(SwingWorker<?, ?> current) {
+		worker = current;
+		boolean idle = current == null;
+		btnOpen.setEnabled(idle);
+		btnPaste.setEnabled(idle);
+		btnExport.setEnabled(idle);
+		btnClear.setEnabled(idle);
+		btnCancel.setEnabled(!idle);
+		if (current != null) {
+			progressBar.setValue(0);
+			current.addPropertyChangeListener(event -> {
+				if ("progress".equals(event.getPropertyName()) && worker == current) {
+					progressBar.setValue((Integer) event.getNewValue());
+				}
+			});
+		}
+	}
+
+	/**
+	 * Shows the number of cases and errors.
+	 */
+	private void updateStatus() {
+		lblStatus.setText(model.getRowCount() + " cases, " + model.getErrorCount() + " errors");
+	}
+
+	/**
+	 * Shows an error message.
+	 */
+	private void showError(String message) {
+		JOptionPane.showMessageDialog(this, message, "IMPORT ERROR", JOptionPane.WARNING_MESSAGE);
+	}
+
+	/**
+	 * Reads and calculates cases on a background thread, adding them to the
+	 * table a block at a time on the event dispatch thread.
+	 */
+	private class ImportWorker extends SwingWorker<Void, CaseTableModel.CaseBlock> {
+
+		/** Case rows to read */
+		private final BufferedReader in;
+		/** Number of characters to read, for the progress */
+		private final long length;
+		/** Year of the stop dates */
+		private final int year;
+
+		/**
+		 * Creates a new ImportWorker.
+		 */
+		ImportWorker(Reader in, long length, int year) {
+			this.in = new BufferedReader(in, BUFFER_SIZE);
+			this.length = Math.max(length, 1);
+			this.year = year;
+		}
+
+		/**
+		 * Reads and calculates every case row, publishing full blocks.
+		 */
+		@Override
+		protected Void doInBackground() throws IOException {
+			try (BufferedReader reader = in) {
+				CaseTableModel.CaseBlock block = new CaseTableModel.CaseBlock(BLOCK_ROWS);
+				CaseRow row = null;
+				long read = 0;
+				String line;
+				while ((line = reader.readLine()) != null && !isCancelled()) {
+					read += line.length() + 1;
+					String trimmed = line.trim();
+					if (trimmed.isEmpty() || trimmed.charAt(0) == '#') {
+						continue;
+					}
+
+					// the first row decides the separator and may be a header
+					if (row == null) {
+						char separator = trimmed.indexOf('\t') >= 0 ? '\t' : ',';
+						row = new CaseRow(separator, year);
+						if (isHeader(trimmed, separator)) {
+							continue;
+						}
+					}
+					block.add(row, row.read(trimmed));
+					if (block.isFull()) {
+						publish(block);
+						block = new CaseTableModel.CaseBlock(BLOCK_ROWS);
+						setProgress((int) Math.min(DONE * read / length, DONE));
+					}
+				}
+				publish(block);
+			}
+			return null;
+		}
+
+		/**
+		 * Adds the calculated blocks to the table.
+		 */
+		@Override
+		protected void process(List<CaseTableModel.CaseBlock> blocks) {
+			if (worker != this) {
+				return;
+			}
+			for (CaseTableModel.CaseBlock block : blocks) {
+				model.addRows(block);
+			}
+			updateStatus();
+		}
+
+		/**
+		 * Shows why the import stopped, if it failed.
+		 */
+		@Override
+		protected void done() {
+			if (worker != this) {
+				return;
+			}
+			setWorking(null);
+			progressBar.setValue(DONE);
+			try {
+				get();
+			} catch (ExecutionException e) {
+				showError("Could not read the cases\n" + e.getCause().getMessage());
+			} catch (InterruptedException | CancellationException e) {
+				// a cancelled import keeps the rows read so far
+			}
+		}
+
+		/**
+		 * Is the line a header rather than a case? A case has a digit after
+		 * its first separator.
+		 */
+		private boolean isHeader(String line, char separator) {
+			int at = line.indexOf(separator);
+			while (at >= 0 && at + 1 < line.length() && line.charAt(at + 1) == ' ') {
+				at++;
+			}
+			return at < 0 || at + 1 >= line.length() || !Character.isDigit(line.charAt(at + 1));
+		}
+	}
+
+	/**
+	 * Writes the results to a file on a background thread.
+	 */
+	private class ExportWorker extends SwingWorker<Void, Void> {
+
+		/** File the results are written to */
+		private final File file;
+		/** Number of rows to write */
+		private final int rows;
+
+		/**
+		 * Creates a new ExportWorker.
+		 */
+		ExportWorker(File file, int rows) {
+			this.file = file;
+			this.rows = rows;
+		}
+
+		/**
+		 * Writes the results.
+		 */
+		@Override
+		protected Void doInBackground() throws IOException {
+			try (Writer out = new BufferedWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8),
+					BUFFER_SIZE)) {
+				model.export(out, rows);
+			}
+			return null;
+		}
+
+		/**
+		 * Shows whether the export worked.
+		 */
+		@Override
+		protected void done() {
+			if (worker != this) {
+				return;
+			}
+			setWorking(null);
+			try {
+				get();
+				progressBar.setValue(DONE);
+				lblStatus.setText(rows + " cases exported to " + file.getName());
+			} catch (ExecutionException e) {
+				showError("Could not export the results\n" + e.getCause().getMessage());
+			} catch (InterruptedException | CancellationException e) {
+				// a cancelled export leaves a partial file
+			}
+		}
+	}
+}
@@ -0,0 +1,363 @@
+package ui;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.table.AbstractTableModel;
+
+import batch.CaseRow;
+import main.ChargeCalculator;
+import main.ChargeError;
+import main.ChargeResult;
+
+/**
+ * CaseTableModel holds the imported cases shown in the batch import table.
+ * Each column is kept in its own primitive array (entries, totals, flags) and
+ * the text of a cell is only made when the table paints it, so a
+ * table of 100,000 cases costs a few megabytes however it is scrolled. Error
+ * messages are kept once each and referred to by number.
+ *
+ * The model is only changed on the event dispatch thread.
+ *
+ * @author Kimberle McGill
+ * @version 1.2.261018
+ */
+class CaseTableModel extends AbstractTableModel {
+
+	/** ID number used for object serialization. */
+	private static final long serialVersionUID = 1L;
+	/** Case id of each row */
+	private String[] caseIds = new String[INITIAL_ROWS];
+	/** Start of each row, packed or in epoch minutes, INVALID_MINUTE if not read */
+	private long[] starts = new long[INITIAL_ROWS];
+	/** Stop of each row, packed or in epoch minutes, INVALID_MINUTE if not read */
+	private long[] stops = new long[INITIAL_ROWS];
+	/** Total minutes of each row */
+	private int[] totals = new int[INITIAL_ROWS];
+	/** Multi-day and dated flags and error number of each row */
+	private int[] flags = new int[INITIAL_ROWS];
+	/** Number of rows */
+	private int rowCount;
+	/** Distinct error messages */
+	private final List<String> errors = new ArrayList<String>();
+	/** Number of each distinct error message */
+	private final Map<String, Integer> errorNumbers = new HashMap<String, Integer>();
+	/** Number of rows that could not be calculated */
+	private int errorCount;
+	/** Rows held before the arrays first grow */
+	private static final int INITIAL_ROWS = 1024;
+	/** Flag marking a multi-day row */
+	private static final int MULTI_FLAG = 1;
+	/** Flag marking a row whose entries carry their years */
+	private static final int DATED_FLAG = 2;
+	/** Bits to shift the error number in the flags, 0 for no error */
+	private static final int ERROR_SHIFT = 2;
+	/** Names of the columns */
+	private static final String[] COLUMNS = { "Case", "Start", "Stop", "Multi-day", "Total minutes",
+			"Charge minutes", "Extra minutes", "Error" };
+	/** Index of the case id column */
+	static final int CASE_ID = 0;
+	/** Index of the start column */
+	static final int START = 1;
+	/** Index of the stop column */
+	static final int STOP = 2;
+	/** Index of the multi-day column */
+	static final int MULTI = 3;
+	/** Index of the total minutes column */
+	static final int TOTAL = 4;
+	/** Index of the charge minutes column */
+	static final int CHARGE = 5;
+	/** Index of the extra minutes column */
+	static final int EXTRA = 6;
+	/** Index of the error column */
+	static final int ERROR = 7;
+
+	/**
+	 * Gets the number of rows.
+	 *
+	 * @return the number of cases
+	 */
+	@Override
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Gets the number of columns.
+	 *
+	 * @return the number of columns
+	 */
+	@Override
+	public int getColumnCount() {
+		return COLUMNS.length;
+	}
+
+	/**
+	 * Gets the name of a column.
+	 *
+	 * @param column
+	 *            index of the column
+	 * @return the name of the column
+	 */
+	@Override
+	public String getColumnName(int column) {
+		return COLUMNS[column];
+	}
+
+	/**
+	 * Gets the class of the values of a column, so numbers are lined up and
+	 * sorted as numbers.
+	 *
+	 * @param column
+	 *            index of the column
+	 * @return the class of the values
+	 */
+	@Override
+	public Class<?> getColumnClass(int column) {
+		if (column == MULTI) {
+			return Boolean.class;
+		} else if (column == TOTAL || column == CHARGE || column == EXTRA) {
+			return Integer.class;
+		}
+		return String.class;
+	}
+
+	/**
+	 * Gets the value of a cell, made when it is asked for.
+	 *
+	 * @param row
+	 *            index of the row
+	 * @param column
+	 *            index of the column
+	 * @return the value of the cell, null for the minutes of an error row
+	 */
+	@Override
+	public Object getValueAt(int row, int column) {
+		boolean failed = isError(row);
+		switch (column) {
+		case CASE_ID:
+			return caseIds[row];
+		case START:
+			return formatEntry(starts[row], flags[row]);
+		case STOP:
+			return formatEntry(stops[row], flags[row]);
+		case MULTI:
+			return (flags[row] & MULTI_FLAG) != 0;
+		case TOTAL:
+			return failed ? null : Integer.valueOf(totals[row]);
+		case CHARGE:
+			return failed ? null : Integer.valueOf((int) ChargeResult.chargeMinutes(totals[row]));
+		case EXTRA:
+			return failed ? null : Integer.valueOf((int) ChargeResult.extraMinutes(totals[row]));
+		default:
+			return failed ? errors.get((flags[row] >>> ERROR_SHIFT) - 1) : "";
+		}
+	}
+
+	/**
+	 * Is the given row a case that could not be calculated?
+	 *
+	 * @param row
+	 *            index of the row
+	 * @return true if the row has an error
+	 */
+	boolean isError(int row) {
+		return (flags[row] >>> ERROR_SHIFT) != 0;
+	}
+
+	/**
+	 * Gets the number of rows that could not be calculated.
+	 *
+	 * @return the number of error rows
+	 */
+	int getErrorCount() {
+		return errorCount;
+	}
+
+	/**
+	 * Adds the rows of an imported block to the end of the table.
+	 *
+	 * @param block
+	 *            the calculated rows
+	 */
+	void addRows(CaseBlock block) {
+		if (block.size == 0) {
+			return;
+		}
+		int first = rowCount;
+		ensureCapacity(rowCount + block.size);
+		for (int i = 0; i < block.size; i++) {
+			int row = rowCount++;
+			caseIds[row] = block.caseIds[i];
+			starts[row] = block.starts[i];
+			stops[row] = block.stops[i];
+			totals[row] = block.totals[i];
+			int flag = (block.multi[i] ? MULTI_FLAG : 0) | (block.dated[i] ? DATED_FLAG : 0);
+			if (block.errors[i] != null) {
+				flag |= errorNumber(block.errors[i]) << ERROR_SHIFT;
+				errorCount++;
+			}
+			flags[row] = flag;
+		}
+		fireTableRowsInserted(first, rowCount - 1);
+	}
+
+	/**
+	 * Removes every row.
+	 */
+	void clear() {
+		caseIds = new String[INITIAL_ROWS];
+		starts = new long[INITIAL_ROWS];
+		stops = new long[INITIAL_ROWS];
+		totals = new int[INITIAL_ROWS];
+		flags = new int[INITIAL_ROWS];
+		rowCount = 0;
+		errorCount = 0;
+		errors.clear();
+		errorNumbers.clear();
+		fireTableDataChanged();
+	}
+
+	/**
+	 * Writes the first rows in the same layout as the batch results:
+	 * case_id,total_minutes,charge_minutes,extra_minutes,error.
+	 *
+	 * @param out
+	 *            where the rows are written
+	 * @param rows
+	 *            the number of rows to write
+	 * @throws IOException
+	 *             if the rows cannot be written
+	 */
+	void export(Writer out, int rows) throws IOException {
+		StringBuilder line = new StringBuilder();
+		out.write("case_id,total_minutes,charge_minutes,extra_minutes,error\n");
+		for (int row = 0; row < rows; row++) {
+			line.setLength(0);
+			line.append(caseIds[row]).append(',');
+			if (isError(row)) {
+				line.append(",,,").append(errors.get((flags[row] >>> ERROR_SHIFT) - 1));
+			} else {
+				int total = totals[row];
+				line.append(total).append(',').append(ChargeResult.chargeMinutes(total)).append(',')
+						.append(ChargeResult.extraMinutes(total)).append(',');
+			}
+			line.append('\n');
+			out.append(line);
+		}
+	}
+
+	/**
+	 * Formats a start or stop in the form it was entered in.
+	 */
+	private static String formatEntry(long entry, int flag) {
+		if (entry == ChargeCalculator.INVALID_MINUTE) {
+			return "";
+		}
+		return (flag & DATED_FLAG) != 0 ? ChargeCalculator.formatDateTime(entry) : ChargeCalculator.format((int) entry);
+	}
+
+	/**
+	 * Gets the number of an error message, adding it if it is new.
+	 */
+	private int errorNumber(String message) {
+		Integer number = errorNumbers.get(message);
+		if (number == null) {
+			errors.add(message);
+			number = errors.size();
+			errorNumbers.put(message, number);
+		}
+		return number;
+	}
+
+	/**
+	 * Grows the arrays to hold at least the given number of rows.
+	 */
+	private void ensureCapacity(int rows) {
+		if (rows <= caseIds.length) {
+			return;
+		}
+		int capacity = Math.max(rows, caseIds.length * 2);
+		caseIds = Arrays.copyOf(caseIds, capacity);
+		starts = Arrays.copyOf(starts, capacity);
+		stops = Arrays.copyOf(stops, capacity);
+		totals = Arrays.copyOf(totals, capacity);
+		flags = Arrays.copyOf(flags, capacity);
+	}
+
+	/**
+	 * A block of calculated rows, filled in on a background thread and then
+	 * added to the table on the event dispatch thread.
+	 */
+	static final class CaseBlock {
+
+		/** Case id of each row */
+		final String[] caseIds;
+		/** Start of each row, packed or in epoch minutes */
+		final long[] starts;
+		/** Stop of each row, packed or in epoch minutes */
+		final long[] stops;
+		/** Total minutes of each row */
+		final int[] totals;
+		/** Multi-day flag of each row */
+		final boolean[] multi;
+		/** Do the entries of each row carry their years? */
+		final boolean[] dated;
+		/** Error message of each row, null if calculated */
+		final String[] errors;
+		/** Number of rows */
+		int size;
+
+		/**
+		 * Creates an empty block.
+		 */
+		CaseBlock(int capacity) {
+			caseIds = new String[capacity];
+			starts = new long[capacity];
+			stops = new long[capacity];
+			totals = new int[capacity];
+			multi = new boolean[capacity];
+			dated = new boolean[capacity];
+			errors = new String[capacity];
+		}
+
+		/**
+		 * Is the block full?
+		 */
+		boolean isFull() {
+			return size == caseIds.length;
+		}
+
+		/**
+		 * Adds the row last read, with why it could not be calculated, or null
+		 * if it was.
+		 */
+		void add(CaseRow row, ChargeError error) {
+			caseIds[size] = row.getCaseId();
+			dated[size] = row.isDated();
+			if (dated[size]) {
+				starts[size] = row.getStartMinute();
+				stops[size] = row.getStopMinute();
+			} else {
+				starts[size] = entry(row.getStartEntry());
+				stops[size] = entry(row.getStopEntry());
+			}
+			multi[size] = row.isMulti();
+			totals[size] = (int) row.getTotalMinutes();
+			errors[size] = error == null ? null : error.getMessage();
+			size++;
+		}
+
+		/**
+		 * Widens a packed entry, INVALID_MINUTE if it was not read.
+		 */
+		private static long entry(int packed) {
+			return packed == ChargeCalculator.INVALID ? ChargeCalculator.INVALID_MINUTE : packed;
+		}
+	}
+}
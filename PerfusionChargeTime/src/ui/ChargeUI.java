@@ -9,12 +9,22 @@ import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.*;
 
+import main.ChargeCache;
 import main.ChargeTime;
+import main.ChargeValidator;
+import store.CaseLog;
 
 /**
  * ChargeUI maintains the user interface for calculating charge times.
@@ -100,8 +110,20 @@ public class ChargeUI extends JFrame implements ActionListener, ItemListener {
 	private Dimension button2Bumper = new Dimension(55, 0);
 	/** Is the multi-day check mark selected? */
 	private Boolean isChecked;
+	/** Log of calculated cases, null if not kept */
+	private CaseLog caseLog;
+	/** Single thread that appends to the case log, never interrupted */
+	private ExecutorService logExecutor;
+	/** Button to open the batch import screen */
+	private JButton btnBatch;
+	/** Shown while a calculation is in progress */
+	private JProgressBar progressBar;
+	/** Calculation in progress, null if there is none */
+	private CalculationWorker worker;
 	/** Size of date / time text fields */
 	private static final int TEXT_ENTRY = 8;
+	/** Seconds to wait at exit for cases still to be logged */
+	private static final int LOG_DRAIN_SECONDS = 5;
 	/** Width of Panel */
 	private static final int PANEL_WIDTH = 500;
 	/** Height of Panel */
@@ -114,8 +136,6 @@ public class ChargeUI extends JFrame implements ActionListener, ItemListener {
 	private static final int AREA_WIDTH = 50;
 	/** Text area height */
 	private static final int AREA_HEIGHT = 30;
-	/** Length of date and time entries */
-	private static final int PROPER_ENTRY_LENGTH = 4;
 	/** Title of the application */
 	private static final String APP_TITLE = "Perfusion Charges";
 	/** Integer for the month of October (first double digit month) */
@@ -144,6 +164,13 @@ public class ChargeUI extends JFrame implements ActionListener, ItemListener {
 		isChecked = false;
 		chkDays.addItemListener(this);
 		pnlToggle.add(chkDays, BorderLayout.CENTER);
+		btnBatch = new JButton("BATCH IMPORT");
+		btnBatch.addActionListener(this);
+		pnlToggle.add(btnBatch);
+		progressBar = new JProgressBar();
+		progressBar.setIndeterminate(true);
+		progressBar.setVisible(false);
+		pnlToggle.add(progressBar);
 
 		// set start date panel
 		pnlStartDate = new JPanel();
@@ -234,6 +261,9 @@ public class ChargeUI extends JFrame implements ActionListener, ItemListener {
 		// code for detecting hitting the Enter key
 		handleEnterKey();
 
+		// keep calculated cases if a case log is given
+		openCaseLog();
+
 		// Add panel to the container
 		Container c = getContentPane();
 		c.add(panel, BorderLayout.CENTER);
@@ -281,6 +311,8 @@ public class ChargeUI extends JFrame implements ActionListener, ItemListener {
 			System.exit(0);
 		} else if (e.getSource() == btnCalculate) {
 			calculateCharge();
+		} else if (e.getSource() == btnBatch) {
+			new BatchImportUI().setVisible(true);
 		} else if (e.getSource() == btnNew) {
 			txtStartDate.setText("");
 			txtStartTime.setText("");
@@ -290,6 +322,7 @@ public class ChargeUI extends JFrame implements ActionListener, ItemListener {
 			startTime = "";
 			stopTime = "";
 			charge = null;
+			cancelCalculation();
 		}
 	}
 
@@ -304,7 +337,7 @@ public class ChargeUI extends JFrame implements ActionListener, ItemListener {
 
 					// if not empty
 					// if properly formatted
-					if (!txtStartDate.getText().isEmpty() && isProperFormat(txtStartDate.getText().trim())) {
+					if (!txtStartDate.getText().isEmpty() && isProperDate(txtStartDate.getText().trim())) {
 
 						// get the entry
 						startDate = txtStartDate.getText().trim();
@@ -338,7 +371,7 @@ public class ChargeUI extends JFrame implements ActionListener, ItemListener {
 
 					// if not empty
 					// if properly formatted
-					if (!txtStartTime.getText().isEmpty() && isProperFormat(txtStartTime.getText().trim())) {
+					if (!txtStartTime.getText().isEmpty() && isProperTime(txtStartTime.getText().trim())) {
 
 						// get the entry
 						startTime = txtStartTime.getText().trim();
@@ -372,7 +405,7 @@ public class ChargeUI extends JFrame implements ActionListener, ItemListener {
 
 					// if not empty
 					// if properly formatted
-					if (!txtStopDate.getText().isEmpty() && isProperFormat(txtStopDate.getText().trim())) {
+					if (!txtStopDate.getText().isEmpty() && isProperDate(txtStopDate.getText().trim())) {
 
 						// get entry
 						stopDate = txtStopDate.getText().trim();
@@ -406,7 +439,7 @@ public class ChargeUI extends JFrame implements ActionListener, ItemListener {
                     
 					// if not empty
 					// if properly formatted
-					if (!txtStopTime.getText().isEmpty() && isProperFormat(txtStopTime.getText().trim())) {
+					if (!txtStopTime.getText().isEmpty() && isProperTime(txtStopTime.getText().trim())) {
 
 						// get entry
 						stopTime = txtStopTime.getText().trim();
@@ -463,6 +496,7 @@ public class ChargeUI extends JFrame implements ActionListener, ItemListener {
 					stopDate = "";
 					stopTime = "";
 					charge = null;
+					cancelCalculation();
 				}
 			}
 		});
@@ -477,83 +511,227 @@ public class ChargeUI extends JFrame implements ActionListener, ItemListener {
 	}
 
 	/**
-	 * Creates a new ChargeTime with the given dates and times, and displays the
-	 * result in the text area.
+	 * Reads the given dates and times and starts calculating the charges in the
+	 * background. The result is displayed in the text area when it is ready.
 	 */
 	private void calculateCharge() {
-		try {
-			if (isFilledOut()) {
-				// multi day?
-				if (isChecked) {
-					startDate = txtStartDate.getText().trim();
-					stopDate = txtStopDate.getText().trim();
-					// did the user enter the same dates?
-					if (Objects.equals(startDate, stopDate)) {
-						isChecked = false;
-						JOptionPane.showMessageDialog(panel, "Days entered are the SAME", "Warning!", 
-								JOptionPane.WARNING_MESSAGE);
-					}
-				// if not, use today's date
-				} else {
-					String today;
-					// add a leading zero for months less then October
-					if (LocalDate.now().getMonthValue() < OCT) {
-						today = "0" + LocalDate.now().getMonthValue();
-					} else {
-						today = "" + LocalDate.now().getMonthValue();
-					}
-					// add a leading zero for days less than 10
-					if (LocalDate.now().getDayOfMonth() < 10) {
-						today += "0" + LocalDate.now().getDayOfMonth();
-					} else {
-						today += LocalDate.now().getDayOfMonth();
-					}
-					startDate = today;
-					stopDate = today;
+		// one calculation at a time
+		if (worker != null) {
+			return;
+		}
+		if (isFilledOut()) {
+			// multi day?
+			if (isChecked) {
+				startDate = txtStartDate.getText().trim();
+				stopDate = txtStopDate.getText().trim();
+				// did the user enter the same dates?
+				if (Objects.equals(startDate, stopDate)) {
+					isChecked = false;
+					JOptionPane.showMessageDialog(panel, "Days entered are the SAME", "Warning!", 
+							JOptionPane.WARNING_MESSAGE);
 				}
-				startTime = txtStartTime.getText().trim();
-				stopTime = txtStopTime.getText().trim();
+			// if not, use today's date
 			} else {
-				JOptionPane.showMessageDialog(panel, "Please provide ALL dates and times!", "INPUT ERROR",
-						JOptionPane.WARNING_MESSAGE);
+				String today;
+				// add a leading zero for months less then October
+				if (LocalDate.now().getMonthValue() < OCT) {
+					today = "0" + LocalDate.now().getMonthValue();
+				} else {
+					today = "" + LocalDate.now().getMonthValue();
+				}
+				// add a leading zero for days less than 10
+				if (LocalDate.now().getDayOfMonth() < 10) {
+					today += "0" + LocalDate.now().getDayOfMonth();
+				} else {
+					today += LocalDate.now().getDayOfMonth();
+				}
+				startDate = today;
+				stopDate = today;
+			}
+			startTime = txtStartTime.getText().trim();
+			stopTime = txtStopTime.getText().trim();
+		} else {
+			JOptionPane.showMessageDialog(panel, "Please provide ALL dates and times!", "INPUT ERROR",
+					JOptionPane.WARNING_MESSAGE);
+			return;
+		}
+
+		String chargeStart = startDate + " " + startTime;
+		String chargeEnd = stopDate + " " + stopTime;
+
+		areaCharges.setText("");
+		progressBar.setVisible(true);
+		btnCalculate.setEnabled(false);
+		worker = new CalculationWorker(chargeStart, chargeEnd, isChecked, LocalDate.now().getYear());
+		worker.execute();
+	}
+
+	/**
+	 * Cancels the calculation in progress, if there is one. The worker thread
+	 * is not interrupted; its result is dropped and never logged.
+	 */
+	private void cancelCalculation() {
+		if (worker != null) {
+			worker.cancel(false);
+			worker = null;
+			progressBar.setVisible(false);
+			btnCalculate.setEnabled(true);
+		}
+	}
+
+	/**
+	 * Clears the entries after a calculation that could not be made.
+	 */
+	private void clearEntries() {
+		txtStartDate.setText("");
+		txtStartTime.setText("");
+		txtStopDate.setText("");
+		txtStopTime.setText("");
+		areaCharges.setText("");
+		startDate = "";
+		startTime = "";
+		stopDate = "";
+		stopTime = "";
+		charge = null;
+		chkDays.requestFocus();
+	}
+
+	/**
+	 * Calculates and formats one charge on a background thread, then displays
+	 * it and hands it to the log thread on the event dispatch thread.
+	 */
+	private class CalculationWorker extends SwingWorker<ChargeTime, Void> {
+
+		/** Start date and time */
+		private final String start;
+		/** Stop date and time */
+		private final String stop;
+		/** Is this a multi-day charge? */
+		private final boolean multi;
+		/** Year of the stop date */
+		private final int year;
+
+		/**
+		 * Creates a new CalculationWorker for the given entries.
+		 */
+		CalculationWorker(String start, String stop, boolean multi, int year) {
+			this.start = start;
+			this.stop = stop;
+			this.multi = multi;
+			this.year = year;
+		}
+
+		/**
+		 * Calculates the charge and formats its text, off the event dispatch
+		 * thread.
+		 */
+		@Override
+		protected ChargeTime doInBackground() {
+			ChargeTime time = ChargeCache.shared().get(start, stop, multi, year);
+			time.getCharges();
+			return time;
+		}
+
+		/**
+		 * Displays and logs the charge, or shows why it could not be calculated,
+		 * unless the calculation was cancelled.
+		 */
+		@Override
+		protected void done() {
+			if (worker != this) {
 				return;
 			}
+			worker = null;
+			progressBar.setVisible(false);
+			btnCalculate.setEnabled(true);
+			try {
+				charge = get();
+				areaCharges.setText(charge.getCharges());
+				logCase(charge);
+			} catch (ExecutionException e) {
+				JOptionPane.showMessageDialog(panel, e.getCause().getMessage(), "COMPUTATIONAL ERROR",
+						JOptionPane.WARNING_MESSAGE);
+				clearEntries();
+			} catch (InterruptedException | CancellationException e) {
+				// a cancelled calculation shows nothing
+			}
+		}
+	}
 
-			String chargeStart = startDate + " " + startTime;
-			String chargeEnd = stopDate + " " + stopTime;
-			this.charge = new ChargeTime(chargeStart, chargeEnd, isChecked);
-			this.areaCharges.setText(charge.getCharges());
-		} catch (IllegalArgumentException e) {
-			JOptionPane.showMessageDialog(panel, e.getMessage(), "COMPUTATIONAL ERROR", JOptionPane.WARNING_MESSAGE);
-			txtStartDate.setText("");
-			txtStartTime.setText("");
-			txtStopDate.setText("");
-			txtStopTime.setText("");
-			areaCharges.setText("");
-			startDate = "";
-			startTime = "";
-			stopDate = "";
-			stopTime = "";
-			charge = null;
-			chkDays.requestFocus();
+	/**
+	 * Appends a calculated case to the case log, if one is kept, on the log
+	 * thread. Appends are made one at a time, in the order the cases were
+	 * shown, and the log thread is never interrupted, so a cancelled
+	 * calculation cannot close the log's channel part way through a write.
+	 */
+	private void logCase(ChargeTime time) {
+		if (caseLog == null) {
+			return;
 		}
+		final CaseLog log = caseLog;
+		logExecutor.execute(() -> {
+			try {
+				log.append(time);
+			} catch (IOException | IllegalArgumentException e) {
+				SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(panel,
+						"Case was not logged!\n" + e.getMessage(), "LOG ERROR", JOptionPane.WARNING_MESSAGE));
+			}
+		});
 	}
 
 	/**
-	 * Checks to be sure the entered dates/times are in the proper format.
+	 * Opens the case log named by the system property "chargetime.log", and
+	 * closes it when the application exits, after the cases waiting to be
+	 * logged are written.
 	 */
-	private boolean isProperFormat(String entry) {
-		if (entry.length() == PROPER_ENTRY_LENGTH) {
-			for (int i = 0; i < entry.length(); i++) {
-				if (!Character.isDigit(entry.charAt(i))) {
-					return false;
+	private void openCaseLog() {
+		String path = System.getProperty("chargetime.log");
+		if (path == null || path.isEmpty()) {
+			return;
+		}
+		try {
+			// cases are calculated one at a time, so force each one to disk
+			final CaseLog log = new CaseLog(Paths.get(path), 1);
+			final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "case-log");
+				thread.setDaemon(true);
+				return thread;
+			});
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				executor.shutdown();
+				try {
+					executor.awaitTermination(LOG_DRAIN_SECONDS, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
 				}
-			}
-		} else {
-			return false;
+				try {
+					log.close();
+				} catch (IOException e) {
+					System.err.println("Could not close the case log: " + e.getMessage());
+				}
+			}));
+			logExecutor = executor;
+			caseLog = log;
+		} catch (IOException e) {
+			JOptionPane.showMessageDialog(panel, "Cases will not be logged!\n" + e.getMessage(), "LOG ERROR",
+					JOptionPane.WARNING_MESSAGE);
 		}
+	}
 
-		return true;
+	/**
+	 * Checks to be sure the entered date is in the form of MMdd and is a day of
+	 * its month.
+	 */
+	private boolean isProperDate(String entry) {
+		return ChargeValidator.checkDate(entry) == null;
+	}
+
+	/**
+	 * Checks to be sure the entered time is in the form of HHmm and is a time of
+	 * day.
+	 */
+	private boolean isProperTime(String entry) {
+		return ChargeValidator.checkTime(entry) == null;
 	}
 
 	/**
@@ -563,7 +741,7 @@ public class ChargeUI extends JFrame implements ActionListener, ItemListener {
 	 *            command line arguments
 	 */
 	public static void main(String[] args) {
-		new ChargeUI();
+		SwingUtilities.invokeLater(ChargeUI::new);
 	}
 
 	/**
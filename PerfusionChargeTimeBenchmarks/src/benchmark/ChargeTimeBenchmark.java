@@ -0,0 +1,166 @@
+package benchmark;
+
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import main.ChargeCalculator;
+import main.ChargeTime;
+import main.ZoneOffsets;
+
+/**
+ * ChargeTimeBenchmark measures building a ChargeTime and getting its charges
+ * for the kinds of cases the calculation handles differently: a single day, a
+ * multi-day run, a run from December into January and a day of more than 999
+ * minutes (split for ChargeMaster). Run with the GC profiler ("-prof gc") to
+ * see the bytes allocated per operation next to the operations per second.
+ *
+ * @author Kimberle McGill
+ * @version 1.2.261018
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ChargeTimeBenchmark {
+
+	/** Kind of case being measured */
+	@Param({ "SINGLE_DAY", "MULTI_DAY", "YEAR_CROSSING", "SPLIT_MINS" })
+	public String kind;
+
+	/* Start date and time of the case */
+	private String start;
+	/* Stop date and time of the case */
+	private String stop;
+	/* Is the case multi-day? */
+	private boolean multi;
+	/* Case built once, for measuring getCharges alone */
+	private ChargeTime charge;
+	/* Result array reused by the calculator benchmark */
+	private final int[] result = new int[ChargeCalculator.RESULT_SIZE];
+	/* Offsets of a zone with daylight saving time */
+	private final ZoneOffsets zone = ZoneOffsets.of(ZoneId.of("America/Chicago"));
+
+	/**
+	 * Sets up the start, stop and multi-day flag for the kind of case.
+	 */
+	@Setup
+	public void setUp() {
+		if (kind.equals("SINGLE_DAY")) {
+			setCase("0314 0742", "0314 1218", false);
+		} else if (kind.equals("MULTI_DAY")) {
+			setCase("0310 0800", "0314 1230", true);
+		} else if (kind.equals("YEAR_CROSSING")) {
+			setCase("1228 2200", "0103 0615", true);
+		} else if (kind.equals("SPLIT_MINS")) {
+			setCase("0314 0105", "0314 2340", false);
+		} else {
+			throw new IllegalArgumentException("Unknown case kind " + kind);
+		}
+		charge = new ChargeTime(start, stop, multi);
+	}
+
+	/**
+	 * Measures building a new ChargeTime, which calculates and formats the
+	 * charges.
+	 *
+	 * @return the new charge time
+	 */
+	@Benchmark
+	public ChargeTime construct() {
+		return new ChargeTime(start, stop, multi);
+	}
+
+	/**
+	 * Measures getting the charges of a ChargeTime that is already built.
+	 *
+	 * @return the charges
+	 */
+	@Benchmark
+	public String getCharges() {
+		return charge.getCharges();
+	}
+
+	/**
+	 * Measures building a new ChargeTime and getting its charges, the way the
+	 * user interface does for each calculation.
+	 *
+	 * @return the charges
+	 */
+	@Benchmark
+	public String constructAndGetCharges() {
+		return new ChargeTime(start, stop, multi).getCharges();
+	}
+
+	/**
+	 * Measures the calculation core alone, without formatting.
+	 *
+	 * @param blackhole
+	 *            consumes the result
+	 */
+	@Benchmark
+	public void calculate(Blackhole blackhole) {
+		ChargeCalculator.calculate(ChargeCalculator.parseEntry(start), ChargeCalculator.parseEntry(stop), multi,
+				2026, result);
+		blackhole.consume(result[ChargeCalculator.TOTAL_MINUTES]);
+	}
+
+	/**
+	 * Measures the calculation core counting the minutes in a time zone, with
+	 * the day lengths of the breakdown.
+	 *
+	 * @param blackhole
+	 *            consumes the result
+	 */
+	@Benchmark
+	public void calculateInZone(Blackhole blackhole) {
+		ChargeCalculator.calculate(ChargeCalculator.parseEntry(start), ChargeCalculator.parseEntry(stop), multi,
+				2026, zone, result);
+		for (int day = 0; day < result[ChargeCalculator.NUMBER_OF_DAYS]; day++) {
+			blackhole.consume(ChargeCalculator.minutesOnDay(result, day, zone));
+		}
+		blackhole.consume(result[ChargeCalculator.TOTAL_MINUTES]);
+	}
+
+	/*
+	 * Sets the case being measured.
+	 */
+	private void setCase(String start, String stop, boolean multi) {
+		this.start = start;
+		this.stop = stop;
+		this.multi = multi;
+	}
+
+	/**
+	 * Main method which runs all of the benchmarks with the GC profiler.
+	 *
+	 * @param args
+	 *            command line arguments
+	 * @throws RunnerException
+	 *             if the benchmarks cannot be run
+	 */
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder().include(ChargeTimeBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class).build();
+		new Runner(options).run();
+	}
+}